@@ -0,0 +1,248 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.kalgon.gamepadkeyboard.engine.InputEngine;
+
+/**
+ * Moves the cursor with the right stick: the further the stick is pushed sideways, the
+ * faster it goes. Rather than a DPAD key pair per character, every frame moves by as many
+ * characters (or words) as the speed and the elapsed time allow, with one setSelection on
+ * a selection tracked here. Shift extends the selection instead of moving the cursor.
+ * <p>
+ * The text around the cursor is read from the EditorMirror once per movement, and again
+ * only when the cursor nears the end of what was read, to find the word and line
+ * boundaries and the ends of the text.
+ */
+public class AnalogCursor implements Runnable {
+
+    private static final long FRAME_MS = 16;
+    // Speeds at the edge of the deadzone, and with the stick pushed all the way
+    private static final float MIN_CHARS_PER_SECOND = 4;
+    private static final float MAX_CHARS_PER_SECOND = 80;
+    private static final float MIN_WORDS_PER_SECOND = 2;
+    private static final float MAX_WORDS_PER_SECOND = 16;
+    // How much text is read on each side of the cursor, and how close to the end of it the
+    // cursor gets before reading again
+    private static final int WINDOW = 1024;
+    private static final int WINDOW_MARGIN = WINDOW / 4;
+
+    private final Handler mHandler;
+    private final EditorOutput mOutput;
+    private final InputEngine mEngine;
+
+    // -1 to the left, 1 to the right, 0 when not moving
+    private int mDirection = 0;
+    private boolean mWordJumps = false;
+    private float mDeadzone = 0;
+    private long mLastFrameTime = 0;
+    private float mPendingSteps = 0;
+
+    // The fixed end of the selection and the moving one
+    private int mAnchor = 0;
+    private int mCursor = 0;
+    // The selection the editor has, which the text is read around
+    private int mEditorStart = 0;
+    private int mEditorEnd = 0;
+
+    // The text around the cursor and the editor offset it starts at. Null until read.
+    private CharSequence mText = null;
+    private int mTextStart = 0;
+    // Whether mText reaches the start or the end of the editor's text
+    private boolean mHasTextStart = false;
+    private boolean mHasTextEnd = false;
+
+    public AnalogCursor(Handler handler, EditorOutput output, InputEngine engine) {
+        mHandler = handler;
+        mOutput = output;
+        mEngine = engine;
+    }
+
+    /**
+     * Moves by words instead of characters while set
+     */
+    public void setWordJumps(boolean wordJumps) {
+        mWordJumps = wordJumps;
+    }
+
+    /**
+     * Starts moving one step right away, then at the speed of the stick's deflection
+     *
+     * @param direction -1 to the left, 1 to the right
+     * @param deadzone  The stick's deadzone, where the speed is the lowest
+     * @return False if the editor doesn't report its selection, so the cursor can't be
+     * moved this way
+     */
+    public boolean start(int direction, float deadzone) {
+        stop();
+        if (!startSelection(direction)) return false;
+
+        mDirection = direction;
+        mDeadzone = deadzone;
+        mLastFrameTime = SystemClock.uptimeMillis();
+        mPendingSteps = 1;
+        run();
+        return true;
+    }
+
+    public void stop() {
+        mHandler.removeCallbacks(this);
+        mDirection = 0;
+        mText = null;
+    }
+
+    /**
+     * Jumps to the start or the end of the line, as far as the text read around the cursor goes
+     *
+     * @param direction -1 for the start, 1 for the end
+     * @return False if the editor doesn't report its selection
+     */
+    public boolean jumpLine(int direction) {
+        stop();
+        if (!startSelection(direction) || !readText()) return false;
+
+        int target = mCursor;
+        while (true) {
+            int next = direction > 0 ? target + 1 : target - 1;
+            if (!inText(direction > 0 ? target : next) || charAt(direction > 0 ? target : next) == '\n') break;
+            target = next;
+        }
+        moveTo(target);
+        mText = null;
+        return true;
+    }
+
+    private boolean startSelection(int direction) {
+        // Text still pending would move the selection
+        mOutput.flush();
+        if (!mOutput.knowsSelection()) return false;
+        int start = mOutput.getSelectionStart();
+        int end = mOutput.getSelectionEnd();
+        mEditorStart = Math.min(start, end);
+        mEditorEnd = Math.max(start, end);
+        if (mEngine.isShift()) {
+            mAnchor = start;
+            mCursor = end;
+        } else {
+            // Like the arrow keys, leave a selection from the side we're moving to
+            mCursor = direction > 0 ? Math.max(start, end) : Math.min(start, end);
+            mAnchor = mCursor;
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        if (mDirection == 0) return;
+
+        long now = SystemClock.uptimeMillis();
+        float x = Math.abs(mEngine.getRightStickX());
+        float deflection = Math.max(0, Math.min(1, (x - mDeadzone) / (1 - mDeadzone)));
+        float speed = mWordJumps
+                ? MIN_WORDS_PER_SECOND + (MAX_WORDS_PER_SECOND - MIN_WORDS_PER_SECOND) * deflection * deflection
+                : MIN_CHARS_PER_SECOND + (MAX_CHARS_PER_SECOND - MIN_CHARS_PER_SECOND) * deflection * deflection;
+        mPendingSteps += speed * (now - mLastFrameTime) / 1000f;
+        mLastFrameTime = now;
+
+        int steps = (int) mPendingSteps;
+        if (steps > 0) {
+            mPendingSteps -= steps;
+            step(steps);
+        }
+        mHandler.postDelayed(this, FRAME_MS);
+    }
+
+    private void step(int steps) {
+        if (mText == null || nearWindowEdge()) {
+            if (!readText()) {
+                stop();
+                return;
+            }
+        }
+
+        int target = mCursor;
+        for (int i = 0; i < steps; i++) {
+            int next = mWordJumps ? nextWordBoundary(target) : nextCharacter(target);
+            if (next == target) break;
+            target = next;
+        }
+        moveTo(target);
+    }
+
+    private void moveTo(int target) {
+        if (target == mCursor) return;
+        mCursor = target;
+        if (!mEngine.isShift()) mAnchor = mCursor;
+        mOutput.setSelection(mAnchor, mCursor);
+        mEditorStart = Math.min(mAnchor, mCursor);
+        mEditorEnd = Math.max(mAnchor, mCursor);
+    }
+
+    private boolean nearWindowEdge() {
+        return mDirection > 0
+                ? !mHasTextEnd && mCursor > mTextStart + mText.length() - WINDOW_MARGIN
+                : !mHasTextStart && mCursor < mTextStart + WINDOW_MARGIN;
+    }
+
+    private boolean readText() {
+        // Mostly served from the mirror, without asking the editor
+        EditorMirror mirror = mOutput.readMirror();
+        CharSequence before = mirror.getTextBeforeCursor(WINDOW);
+        CharSequence selected = mirror.getSelectedText();
+        CharSequence after = mirror.getTextAfterCursor(WINDOW);
+        if (before == null || selected == null || after == null) return false;
+
+        StringBuilder text = new StringBuilder(before.length() + selected.length() + after.length());
+        text.append(before).append(selected).append(after);
+        mText = text;
+        mTextStart = mEditorStart - before.length();
+        mHasTextStart = before.length() < WINDOW;
+        mHasTextEnd = after.length() < WINDOW;
+        return true;
+    }
+
+    private boolean inText(int offset) {
+        return offset >= mTextStart && offset < mTextStart + mText.length();
+    }
+
+    private char charAt(int offset) {
+        return mText.charAt(offset - mTextStart);
+    }
+
+    /**
+     * @return The offset one character away in mDirection, keeping surrogate pairs together,
+     * or the same offset at the end of the known text
+     */
+    private int nextCharacter(int offset) {
+        if (mDirection > 0) {
+            if (!inText(offset)) return offset;
+            int next = offset + 1;
+            if (Character.isHighSurrogate(charAt(offset)) && inText(next) && Character.isLowSurrogate(charAt(next))) next++;
+            return next;
+        } else {
+            int next = offset - 1;
+            if (!inText(next)) return offset;
+            if (Character.isLowSurrogate(charAt(next)) && inText(next - 1) && Character.isHighSurrogate(charAt(next - 1))) next--;
+            return next;
+        }
+    }
+
+    /**
+     * @return Like Ctrl+arrow: the end of the next word to the right, or the start of the
+     * previous one to the left
+     */
+    private int nextWordBoundary(int offset) {
+        int target = offset;
+        // Skip the spaces and punctuation, then the word
+        for (int pass = 0; pass < 2; pass++) {
+            boolean word = pass == 1;
+            while (true) {
+                int at = mDirection > 0 ? target : target - 1;
+                if (!inText(at) || Character.isLetterOrDigit(charAt(at)) != word) break;
+                target += mDirection;
+            }
+        }
+        return target;
+    }
+}
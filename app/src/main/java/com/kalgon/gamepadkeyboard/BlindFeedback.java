@@ -0,0 +1,246 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.util.Log;
+
+/**
+ * Tells where the stick is and which layout is active when the blind keyboard shows
+ * nothing. Every stick position has its earcon: a short tone pitched higher the further
+ * up the position is and panned to its side, so the sectors can be told apart by ear.
+ * The center is a softer tone between them. Every layout has a pair of notes, rising for
+ * the languages and falling for the symbols. Vibration, when enabled, is a tick per
+ * sector, lighter for the center, and one pulse per layout.
+ * <p>
+ * The tones are synthesized once, when the blind keyboard is selected, and the vibration
+ * effects are built then too, so nothing is decoded or allocated on the event path. They
+ * all play through a single low latency AudioTrack, since devices only grant the low
+ * latency path to a few tracks, and the track is only open while the keyboard is shown:
+ * playing an earcon drops what's left of the previous one and queues the new one's samples.
+ * <p>
+ * Only use from the main thread, open() when the keyboard shows, close() when it hides.
+ */
+public class BlindFeedback {
+
+    public static final int SECTORS = 9;
+    // Languages beyond this reuse the earcons from the first, by their index
+    public static final int LAYOUT_EARCONS = 4;
+
+    private static final int SECTOR_TONE_MS = 45;
+    private static final int LAYOUT_NOTE_MS = 60;
+    // Fading in and out keeps the tones from clicking
+    private static final int RAMP_MS = 5;
+    private static final float SECTOR_VOLUME = 0.5f;
+    private static final float CENTER_VOLUME = 0.3f;
+    private static final float LAYOUT_VOLUME = 0.4f;
+    private static final float CENTER_HZ = 660;
+    // Half an octave each way, so up and down are an octave apart
+    private static final float SEMITONES_PER_UNIT = 6;
+    // The first note of each layout's pair, and how far the second one is
+    private static final float LAYOUT_BASE_HZ = 440;
+    private static final int LAYOUT_INTERVAL_SEMITONES = 7;
+
+    private static final int TICK_MS = 12;
+    private static final int TICK_AMPLITUDE = 180;
+    private static final int CENTER_TICK_AMPLITUDE = 70;
+    private static final long LAYOUT_PULSE_MS = 30;
+    private static final long LAYOUT_GAP_MS = 50;
+
+    private final int mSampleRate;
+    private final AudioAttributes mAttributes;
+    // Interleaved stereo samples
+    private final short[][] mSectorEarcons = new short[SECTORS][];
+    private final short[][] mLayoutEarcons = new short[LAYOUT_EARCONS][];
+    private final short[] mSymbolsEarcon;
+    // Open while the keyboard is shown, null otherwise
+    private AudioTrack mTrack = null;
+
+    private final Vibrator mVibrator;
+    private final VibrationEffect[] mSectorEffects = new VibrationEffect[SECTORS];
+    private final VibrationEffect[] mLayoutEffects = new VibrationEffect[LAYOUT_EARCONS];
+    private VibrationEffect mSymbolsEffect;
+
+    /**
+     * Synthesizes every earcon and prepares the vibrations, which takes a few milliseconds
+     *
+     * @param vibrate Whether to vibrate as well as play the earcons
+     */
+    public BlindFeedback(Context context, boolean vibrate) {
+        int sampleRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+        mSampleRate = sampleRate;
+        mAttributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build();
+
+        for (int position = 0; position < SECTORS; position++) {
+            float x = 0;
+            float y = 0;
+            if (position > 0) {
+                // Clockwise from up
+                double angle = Math.toRadians((position - 1) * 45);
+                x = (float) Math.sin(angle);
+                y = (float) Math.cos(angle);
+            }
+            float frequency = (float) (CENTER_HZ * Math.pow(2, y * SEMITONES_PER_UNIT / 12));
+            float volume = position == 0 ? CENTER_VOLUME : SECTOR_VOLUME;
+            short[] pcm = new short[frames(sampleRate, SECTOR_TONE_MS) * 2];
+            tone(pcm, 0, sampleRate, SECTOR_TONE_MS, frequency, volume, x);
+            mSectorEarcons[position] = pcm;
+        }
+
+        for (int i = 0; i < LAYOUT_EARCONS; i++) {
+            // Each language a whole tone higher than the previous
+            float first = semitones(LAYOUT_BASE_HZ, 2 * i);
+            mLayoutEarcons[i] = notes(sampleRate, first, semitones(first, LAYOUT_INTERVAL_SEMITONES));
+        }
+        float symbols = semitones(LAYOUT_BASE_HZ, LAYOUT_INTERVAL_SEMITONES);
+        mSymbolsEarcon = notes(sampleRate, symbols, semitones(symbols, -LAYOUT_INTERVAL_SEMITONES));
+
+        Vibrator vibrator = vibrate ? (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE) : null;
+        mVibrator = vibrator != null && vibrator.hasVibrator() ? vibrator : null;
+        if (mVibrator != null) {
+            for (int position = 0; position < SECTORS; position++) {
+                mSectorEffects[position] = VibrationEffect.createOneShot(TICK_MS,
+                        position == 0 ? CENTER_TICK_AMPLITUDE : TICK_AMPLITUDE);
+            }
+            for (int i = 0; i < LAYOUT_EARCONS; i++) {
+                mLayoutEffects[i] = VibrationEffect.createWaveform(pulses(i + 1), -1);
+            }
+            // A single long pulse
+            mSymbolsEffect = VibrationEffect.createOneShot(LAYOUT_PULSE_MS * 3, VibrationEffect.DEFAULT_AMPLITUDE);
+        }
+    }
+
+    private static int frames(int sampleRate, int ms) {
+        return sampleRate * ms / 1000;
+    }
+
+    private static float semitones(float frequency, int semitones) {
+        return (float) (frequency * Math.pow(2, semitones / 12.0));
+    }
+
+    /**
+     * Two notes one after the other, centered
+     */
+    private static short[] notes(int sampleRate, float first, float second) {
+        int frames = frames(sampleRate, LAYOUT_NOTE_MS);
+        short[] pcm = new short[frames * 2 * 2];
+        tone(pcm, 0, sampleRate, LAYOUT_NOTE_MS, first, LAYOUT_VOLUME, 0);
+        tone(pcm, frames * 2, sampleRate, LAYOUT_NOTE_MS, second, LAYOUT_VOLUME, 0);
+        return pcm;
+    }
+
+    /**
+     * Writes a sine tone into interleaved stereo samples
+     *
+     * @param pan -1 for the left, 1 for the right
+     */
+    private static void tone(short[] pcm, int offset, int sampleRate, int ms, float frequency, float volume, float pan) {
+        // Equal power panning
+        double side = (pan + 1) * Math.PI / 4;
+        float left = (float) Math.cos(side) * volume * Short.MAX_VALUE;
+        float right = (float) Math.sin(side) * volume * Short.MAX_VALUE;
+        int frames = frames(sampleRate, ms);
+        int ramp = frames(sampleRate, RAMP_MS);
+        for (int i = 0; i < frames; i++) {
+            float envelope = Math.min(1f, Math.min(i, frames - 1 - i) / (float) ramp);
+            float sample = (float) Math.sin(2 * Math.PI * frequency * i / sampleRate) * envelope;
+            pcm[offset + i * 2] = (short) (sample * left);
+            pcm[offset + i * 2 + 1] = (short) (sample * right);
+        }
+    }
+
+    private static long[] pulses(int count) {
+        // Starts right away, then alternates vibrating and waiting
+        long[] timings = new long[count * 2];
+        for (int i = 0; i < count; i++) {
+            timings[i * 2] = i == 0 ? 0 : LAYOUT_GAP_MS;
+            timings[i * 2 + 1] = LAYOUT_PULSE_MS;
+        }
+        return timings;
+    }
+
+    /**
+     * Opens the track the earcons play through
+     */
+    public void open() {
+        if (mTrack != null) return;
+        // Room for the longest earcon, so queuing one never blocks
+        int bytes = mLayoutEarcons[0].length * 2;
+        int minBytes = AudioTrack.getMinBufferSize(mSampleRate, AudioFormat.CHANNEL_OUT_STEREO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        try {
+            mTrack = new AudioTrack.Builder()
+                    .setAudioAttributes(mAttributes)
+                    .setAudioFormat(new AudioFormat.Builder()
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setSampleRate(mSampleRate)
+                            .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                            .build())
+                    .setTransferMode(AudioTrack.MODE_STREAM)
+                    .setBufferSizeInBytes(Math.max(bytes, minBytes))
+                    .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                    .build();
+        } catch (UnsupportedOperationException e) {
+            // Only the vibrations then
+            Log.e("GamepadKeyboard", "No track for the earcons: " + e);
+        }
+    }
+
+    /**
+     * Frees the track, the earcons are kept for the next open()
+     */
+    public void close() {
+        if (mTrack != null) {
+            mTrack.release();
+            mTrack = null;
+        }
+        if (mVibrator != null) mVibrator.cancel();
+    }
+
+    /**
+     * @param position The stick position, 0 for the center then 1-8 clockwise from up
+     */
+    public void onStickPosition(int position) {
+        if (position < 0 || position >= SECTORS) return;
+        play(mSectorEarcons[position]);
+        vibrate(mSectorEffects[position]);
+    }
+
+    /**
+     * @param index The index of the language in the keyboard set, or -1 for the symbols
+     */
+    public void onLayout(int index) {
+        if (index < 0) {
+            play(mSymbolsEarcon);
+            vibrate(mSymbolsEffect);
+        } else {
+            play(mLayoutEarcons[index % LAYOUT_EARCONS]);
+            vibrate(mLayoutEffects[index % LAYOUT_EARCONS]);
+        }
+    }
+
+    private void play(short[] earcon) {
+        if (mTrack == null) return;
+        try {
+            // Drops what's left of the previous earcon, so the new one starts right away
+            mTrack.pause();
+            mTrack.flush();
+            mTrack.write(earcon, 0, earcon.length, AudioTrack.WRITE_NON_BLOCKING);
+            mTrack.play();
+        } catch (IllegalStateException e) {
+            // The audio server died or took the track back, skip this earcon
+            Log.e("GamepadKeyboard", "Earcon failed: " + e);
+        }
+    }
+
+    private void vibrate(VibrationEffect effect) {
+        if (mVibrator != null) mVibrator.vibrate(effect);
+    }
+}
@@ -0,0 +1,194 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.hardware.input.InputManager;
+import android.os.Handler;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+import com.kalgon.gamepadkeyboard.engine.JoystickBatch;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * The axis ranges and profile of each connected controller, resolved once per device
+ * instead of on every MotionEvent, and dropped when InputManager reports the device
+ * changed or went away. Profiles are kept per controller model in their own preferences.
+ */
+public class ControllerCalibrations implements InputManager.InputDeviceListener {
+
+    private static final String PROFILES_PREFS = "controller_profiles";
+
+    /**
+     * How one device's axes become a JoystickBatch sample
+     */
+    public static final class Calibration {
+        final String profileKey;
+        final ControllerProfile profile;
+
+        // In JoystickBatch order: X, Y, HAT_X, HAT_Y, then the right stick
+        private final int[] mAxes = new int[JoystickBatch.AXIS_COUNT];
+        private final boolean[] mPresent = new boolean[JoystickBatch.AXIS_COUNT];
+        private final float[] mCenter = new float[JoystickBatch.AXIS_COUNT];
+        private final float[] mSign = new float[JoystickBatch.AXIS_COUNT];
+        private final float[] mFlat = new float[JoystickBatch.AXIS_COUNT];
+
+        // The raw values of the last sample, to calibrate the centers from
+        private final float[] mLastRaw = new float[JoystickBatch.AXIS_COUNT];
+
+        Calibration(InputDevice device, int source, String profileKey, ControllerProfile profile) {
+            this.profileKey = profileKey;
+            this.profile = profile;
+
+            mAxes[0] = MotionEvent.AXIS_X;
+            mAxes[1] = MotionEvent.AXIS_Y;
+            mAxes[2] = MotionEvent.AXIS_HAT_X;
+            mAxes[3] = MotionEvent.AXIS_HAT_Y;
+            mAxes[4] = profile.rightStickRxRy ? MotionEvent.AXIS_RX : MotionEvent.AXIS_Z;
+            mAxes[5] = profile.rightStickRxRy ? MotionEvent.AXIS_RY : MotionEvent.AXIS_RZ;
+
+            float[] centers = {profile.leftCenterX, profile.leftCenterY, 0, 0, profile.rightCenterX, profile.rightCenterY};
+            for (int i = 0; i < JoystickBatch.AXIS_COUNT; i++) {
+                InputDevice.MotionRange range = device.getMotionRange(mAxes[i], source);
+                mPresent[i] = range != null;
+                mCenter[i] = centers[i];
+                mSign[i] = (i == 1 && profile.invertLeftY) || (i == 5 && profile.invertRightY) ? -1 : 1;
+                boolean hat = i == 2 || i == 3;
+                // The hat is digital, the profile's deadzone is for the sticks
+                mFlat[i] = range == null ? 0
+                        : hat || profile.deadzone == ControllerProfile.DEVICE_DEADZONE ? range.getFlat()
+                        : profile.deadzone;
+            }
+        }
+
+        /**
+         * Adds the event's sample at historyPos (-1 for the current one) to the batch
+         */
+        public void addSample(MotionEvent event, int historyPos, JoystickBatch batch) {
+            float[] raw = mLastRaw;
+            for (int i = 0; i < JoystickBatch.AXIS_COUNT; i++) {
+                raw[i] = !mPresent[i] ? 0
+                        : historyPos < 0 ? event.getAxisValue(mAxes[i])
+                        : event.getHistoricalAxisValue(mAxes[i], historyPos);
+            }
+            long time = historyPos < 0 ? event.getEventTime() : event.getHistoricalEventTime(historyPos);
+            batch.add(time, center(0), center(1), center(2), center(3), center(4), center(5));
+        }
+
+        private float center(int i) {
+            // Ignore values within the flat region around the stick's real center
+            float value = (mLastRaw[i] - mCenter[i]) * mSign[i];
+            return Math.abs(value) > mFlat[i] ? value : 0;
+        }
+    }
+
+    private final SharedPreferences mProfiles;
+    private final InputManager mInputManager;
+    // By device id. Only touched on the main thread.
+    private final SparseArray<Calibration> mCalibrations = new SparseArray<>();
+    private Calibration mLast = null;
+
+    public ControllerCalibrations(Context context) {
+        mProfiles = context.getSharedPreferences(PROFILES_PREFS, Context.MODE_PRIVATE);
+        mInputManager = (InputManager) context.getSystemService(Context.INPUT_SERVICE);
+    }
+
+    public void register(Handler handler) {
+        mInputManager.registerInputDeviceListener(this, handler);
+    }
+
+    public void unregister() {
+        mInputManager.unregisterInputDeviceListener(this);
+        mCalibrations.clear();
+        mLast = null;
+    }
+
+    /**
+     * @return The calibration of the event's device, resolved on its first event
+     */
+    public Calibration get(MotionEvent event) {
+        int deviceId = event.getDeviceId();
+        Calibration calibration = mCalibrations.get(deviceId);
+        if (calibration == null) {
+            InputDevice device = event.getDevice();
+            if (device == null) return null;
+
+            String key = ControllerProfile.key(device.getVendorId(), device.getProductId());
+            calibration = new Calibration(device, event.getSource(), key, loadProfile(key));
+            mCalibrations.put(deviceId, calibration);
+            Log.i("GamepadKeyboard", "Calibrated " + device.getName() + " (" + key + "): " + calibration.profile);
+        }
+        mLast = calibration;
+        return calibration;
+    }
+
+    private ControllerProfile loadProfile(String key) {
+        String text = mProfiles.getString(key, null);
+        if (text == null) return ControllerProfile.DEFAULT;
+        try {
+            return ControllerProfile.DEFAULT.with(text);
+        } catch (IllegalArgumentException e) {
+            Log.e("GamepadKeyboard", "Ignoring the bad profile of " + key + ": " + e.getMessage());
+            return ControllerProfile.DEFAULT;
+        }
+    }
+
+    /**
+     * Changes the profile of the last controller used, and applies it from its next event
+     *
+     * @param text key=value pairs, see ControllerProfile
+     * @return The new profile, or null if no controller was used yet
+     */
+    public ControllerProfile updateLastProfile(String text) {
+        if (mLast == null) return null;
+        return saveProfile(mLast.profileKey, mLast.profile.with(text));
+    }
+
+    /**
+     * Takes the last sample of the last controller used as where its sticks rest.
+     * Leave the sticks alone while doing this.
+     *
+     * @return The new profile, or null if no controller was used yet
+     */
+    public ControllerProfile calibrateLastCenters() {
+        if (mLast == null) return null;
+        float[] raw = mLast.mLastRaw;
+        return saveProfile(mLast.profileKey, mLast.profile.withCenters(raw[0], raw[1], raw[4], raw[5]));
+    }
+
+    private ControllerProfile saveProfile(String key, ControllerProfile profile) {
+        mProfiles.edit().putString(key, profile.toString()).apply();
+        // Every device of that model picks it up on its next event
+        mCalibrations.clear();
+        mLast = null;
+        return profile;
+    }
+
+    public void dump(PrintWriter out) {
+        out.println("Controller profiles:");
+        for (Map.Entry<String, ?> entry : mProfiles.getAll().entrySet()) {
+            out.println("  " + entry.getKey() + " " + entry.getValue());
+        }
+        if (mLast != null) out.println("  Last used: " + mLast.profileKey);
+    }
+
+    @Override
+    public void onInputDeviceAdded(int deviceId) {
+    }
+
+    @Override
+    public void onInputDeviceRemoved(int deviceId) {
+        if (mLast == mCalibrations.get(deviceId)) mLast = null;
+        mCalibrations.remove(deviceId);
+    }
+
+    @Override
+    public void onInputDeviceChanged(int deviceId) {
+        // Its axes may have changed
+        onInputDeviceRemoved(deviceId);
+    }
+}
@@ -0,0 +1,135 @@
+package com.kalgon.gamepadkeyboard;
+
+import java.util.Locale;
+
+/**
+ * Corrections for a controller model whose sticks don't report what they should: where
+ * the sticks rest, how big their flat region really is, inverted axes, and whether the
+ * right stick is on Z/RZ or RX/RY. Stored as a line of key=value pairs, such as:
+ * <pre>
+ * left_center=0.03,-0.02 right_center=0,0 deadzone=0.08 invert_left_y=false invert_right_y=false right_axes=rx_ry
+ * </pre>
+ */
+public final class ControllerProfile {
+
+    // No deadzone override: trust the flat region the device reports
+    public static final float DEVICE_DEADZONE = -1;
+
+    public static final ControllerProfile DEFAULT =
+            new ControllerProfile(0, 0, 0, 0, DEVICE_DEADZONE, false, false, false);
+
+    public final float leftCenterX;
+    public final float leftCenterY;
+    public final float rightCenterX;
+    public final float rightCenterY;
+    // The flat region of the stick axes, or DEVICE_DEADZONE
+    public final float deadzone;
+    public final boolean invertLeftY;
+    public final boolean invertRightY;
+    // The right stick reports on AXIS_RX/AXIS_RY instead of AXIS_Z/AXIS_RZ
+    public final boolean rightStickRxRy;
+
+    public ControllerProfile(float leftCenterX, float leftCenterY, float rightCenterX, float rightCenterY,
+                             float deadzone, boolean invertLeftY, boolean invertRightY, boolean rightStickRxRy) {
+        this.leftCenterX = leftCenterX;
+        this.leftCenterY = leftCenterY;
+        this.rightCenterX = rightCenterX;
+        this.rightCenterY = rightCenterY;
+        this.deadzone = deadzone;
+        this.invertLeftY = invertLeftY;
+        this.invertRightY = invertRightY;
+        this.rightStickRxRy = rightStickRxRy;
+    }
+
+    /**
+     * The profile's key: the controller's USB vendor and product ids
+     */
+    public static String key(int vendorId, int productId) {
+        return String.format(Locale.ROOT, "%04x:%04x", vendorId, productId);
+    }
+
+    public ControllerProfile withCenters(float leftX, float leftY, float rightX, float rightY) {
+        return new ControllerProfile(leftX, leftY, rightX, rightY,
+                deadzone, invertLeftY, invertRightY, rightStickRxRy);
+    }
+
+    /**
+     * @param text key=value pairs separated by spaces, as written by toString(). Missing
+     *             keys keep this profile's values.
+     * @throws IllegalArgumentException On an unknown key or a malformed value
+     */
+    public ControllerProfile with(String text) {
+        float lx = leftCenterX, ly = leftCenterY, rx = rightCenterX, ry = rightCenterY;
+        float dz = deadzone;
+        boolean invertLeft = invertLeftY, invertRight = invertRightY, rxRy = rightStickRxRy;
+
+        for (String pair : text.trim().split("\\s+")) {
+            if (pair.isEmpty()) continue;
+            int equals = pair.indexOf('=');
+            if (equals < 0) throw new IllegalArgumentException("Expected key=value: " + pair);
+            String key = pair.substring(0, equals);
+            String value = pair.substring(equals + 1);
+            switch (key) {
+                case "left_center":
+                    float[] left = parsePoint(value);
+                    lx = left[0];
+                    ly = left[1];
+                    break;
+                case "right_center":
+                    float[] right = parsePoint(value);
+                    rx = right[0];
+                    ry = right[1];
+                    break;
+                case "deadzone":
+                    dz = value.equals("device") ? DEVICE_DEADZONE : parseAxisValue(value);
+                    if (dz < 0 && dz != DEVICE_DEADZONE) {
+                        throw new IllegalArgumentException("deadzone is device or 0..1: " + value);
+                    }
+                    break;
+                case "invert_left_y":
+                    invertLeft = parseBoolean(value);
+                    break;
+                case "invert_right_y":
+                    invertRight = parseBoolean(value);
+                    break;
+                case "right_axes":
+                    if (!value.equals("z_rz") && !value.equals("rx_ry")) {
+                        throw new IllegalArgumentException("right_axes is z_rz or rx_ry: " + value);
+                    }
+                    rxRy = value.equals("rx_ry");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown profile key: " + key);
+            }
+        }
+        return new ControllerProfile(lx, ly, rx, ry, dz, invertLeft, invertRight, rxRy);
+    }
+
+    private static float[] parsePoint(String value) {
+        int comma = value.indexOf(',');
+        if (comma < 0) throw new IllegalArgumentException("Expected x,y: " + value);
+        return new float[]{parseAxisValue(value.substring(0, comma)), parseAxisValue(value.substring(comma + 1))};
+    }
+
+    private static float parseAxisValue(String value) {
+        float f = Float.parseFloat(value);
+        if (!(f >= -1 && f <= 1)) throw new IllegalArgumentException("Out of -1..1: " + value);
+        return f;
+    }
+
+    private static boolean parseBoolean(String value) {
+        if (!value.equals("true") && !value.equals("false")) {
+            throw new IllegalArgumentException("Expected true or false: " + value);
+        }
+        return value.equals("true");
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "left_center=%s,%s right_center=%s,%s deadzone=%s invert_left_y=%b invert_right_y=%b right_axes=%s",
+                leftCenterX, leftCenterY, rightCenterX, rightCenterY,
+                deadzone == DEVICE_DEADZONE ? "device" : Float.toString(deadzone),
+                invertLeftY, invertRightY, rightStickRxRy ? "rx_ry" : "z_rz");
+    }
+}
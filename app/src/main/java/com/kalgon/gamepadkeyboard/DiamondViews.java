@@ -0,0 +1,78 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.graphics.Typeface;
+import android.view.View;
+import android.widget.TextView;
+
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+
+/**
+ * The views of diamond_ui, resolved once, and what is currently shown in them.
+ * The keys are drawn by a single KeyboardCanvasView, the candidates are plain TextViews.
+ */
+public class DiamondViews {
+
+    private static final int[] CANDIDATE_IDS = {R.id.candidate_0, R.id.candidate_1, R.id.candidate_2};
+
+    public static final int CANDIDATES = CANDIDATE_IDS.length;
+
+    private final KeyboardCanvasView mKeyboard;
+
+    private final View mCandidateRow;
+    private final TextView[] mCandidates = new TextView[CANDIDATES];
+    private final String[] mShownCandidates = new String[CANDIDATES];
+    private int mSelectedCandidate = -1;
+
+    public DiamondViews(View root) {
+        mKeyboard = root.findViewById(R.id.keyboard);
+        mCandidateRow = root.findViewById(R.id.candidates);
+        for (int i = 0; i < CANDIDATES; i++) {
+            mCandidates[i] = root.findViewById(CANDIDATE_IDS[i]);
+        }
+    }
+
+    public void setLabels(KeyMap keyMap, boolean shift) {
+        mKeyboard.setLabels(keyMap, shift);
+    }
+
+    /**
+     * @param level A ComponentCallbacks2.TRIM_MEMORY_* level
+     */
+    public void trimMemory(int level) {
+        mKeyboard.trimMemory(level);
+    }
+
+    /**
+     * Shows the first count candidates, with the selected one in bold. The row keeps its
+     * space when empty, so a floating keyboard doesn't change size between words.
+     */
+    public void setCandidates(String[] candidates, int count, int selected) {
+        mCandidateRow.setVisibility(count > 0 ? View.VISIBLE : View.INVISIBLE);
+        for (int i = 0; i < CANDIDATES; i++) {
+            String candidate = i < count ? candidates[i] : "";
+            if (!candidate.equals(mShownCandidates[i])) {
+                mCandidates[i].setText(candidate);
+                mShownCandidates[i] = candidate;
+            }
+        }
+        if (selected != mSelectedCandidate) {
+            if (mSelectedCandidate >= 0) mCandidates[mSelectedCandidate].setTypeface(null, Typeface.NORMAL);
+            if (selected >= 0) mCandidates[selected].setTypeface(null, Typeface.BOLD);
+            mSelectedCandidate = selected;
+        }
+    }
+
+    /**
+     * @param hints Bit n set for each position n to hint at
+     */
+    public void setHints(int hints) {
+        mKeyboard.setHints(hints);
+    }
+
+    /**
+     * @param keyboardType The keyboard_type setting, "full" or "minimal"
+     */
+    public void highlight(int stickPosition, String keyboardType) {
+        mKeyboard.highlight(stickPosition, keyboardType);
+    }
+}
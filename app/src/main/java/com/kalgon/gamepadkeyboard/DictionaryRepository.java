@@ -0,0 +1,191 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.kalgon.gamepadkeyboard.engine.Dictionary;
+import com.kalgon.gamepadkeyboard.engine.DictionaryFormat;
+import com.kalgon.gamepadkeyboard.engine.GestureDecoder;
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+import com.kalgon.gamepadkeyboard.engine.LearnedWords;
+import com.kalgon.gamepadkeyboard.engine.LetterModel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The word completion data of each language, shared by the whole process: the compiled
+ * dictionary, memory-mapped straight from the APK so it never lands on the heap, the
+ * letter model built from it, and the words the user taught it, kept in the app's files.
+ */
+public class DictionaryRepository {
+
+    /**
+     * Everything loaded for one language
+     */
+    public static final class Language {
+        public final String name;
+        // Null if there is no dictionary for the language
+        public final Dictionary dictionary;
+        // Null if there is no dictionary, or the keymap has no letters
+        public final LetterModel letterModel;
+        // Null if there is no dictionary, or the keymap has no letters. Only decode on the main thread.
+        public final GestureDecoder gestureDecoder;
+        public final LearnedWords learnedWords;
+
+        Language(String name, Dictionary dictionary, LetterModel letterModel, GestureDecoder gestureDecoder,
+                 LearnedWords learnedWords) {
+            this.name = name;
+            this.dictionary = dictionary;
+            this.letterModel = letterModel;
+            this.gestureDecoder = gestureDecoder;
+            this.learnedWords = learnedWords;
+        }
+    }
+
+    /**
+     * Called on the main thread once a language is ready
+     */
+    public interface Callback {
+        void onLanguageLoaded(Language language);
+    }
+
+    private static final String TAG = "DictionaryRepository";
+    private static final String LEARNED_WORDS_PREFIX = "learned_";
+
+    private static DictionaryRepository sInstance = null;
+
+    private final Context mContext;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Written by the loader thread, read from the main thread
+    private final Map<String, Language> mLanguages = new ConcurrentHashMap<>();
+
+    private DictionaryRepository(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public static synchronized DictionaryRepository get(Context context) {
+        if (sInstance == null) {
+            sInstance = new DictionaryRepository(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Maps the dictionary of the keymap's language, builds its letter model and reads its
+     * learned words in the background, unless they're already loaded
+     */
+    public void requestLanguage(final KeyMap keyMap, final Callback callback) {
+        final String name = keyMap.getName();
+        Language language = mLanguages.get(name);
+        if (language != null) {
+            callback.onLanguageLoaded(language);
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Language loaded = mLanguages.get(name);
+                if (loaded == null) {
+                    Dictionary dictionary = mapDictionary(name);
+                    LetterModel letterModel = dictionary == null ? null : LetterModel.build(dictionary, keyMap);
+                    GestureDecoder gestureDecoder = dictionary == null ? null : GestureDecoder.build(dictionary, keyMap);
+                    loaded = new Language(name, dictionary, letterModel, gestureDecoder, readLearnedWords(name));
+                    mLanguages.put(name, loaded);
+                }
+
+                final Language language = loaded;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLanguageLoaded(language);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Writes the learned words that changed, in the background
+     */
+    public void saveLearnedWords() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Language language : mLanguages.values()) {
+                    if (language.learnedWords.hasChanged()) {
+                        writeLearnedWords(language.name, language.learnedWords);
+                    }
+                }
+            }
+        });
+    }
+
+    private Dictionary mapDictionary(String name) {
+        String assetPath = DictionaryFormat.ASSETS_DIR + "/" + name + DictionaryFormat.EXTENSION;
+        // The dictionaries are stored uncompressed, so they can be mapped from inside the APK
+        try (AssetFileDescriptor fd = mContext.getAssets().openFd(assetPath);
+             FileInputStream in = fd.createInputStream();
+             FileChannel channel = in.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+            return Dictionary.open(buffer);
+        } catch (FileNotFoundException e) {
+            // Not every language has a dictionary
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed mapping " + assetPath + ": " + e);
+            return null;
+        }
+    }
+
+    private File learnedWordsFile(String name) {
+        return new File(mContext.getFilesDir(), LEARNED_WORDS_PREFIX + name + ".txt");
+    }
+
+    private LearnedWords readLearnedWords(String name) {
+        LearnedWords learnedWords = new LearnedWords();
+        File file = learnedWordsFile(name);
+        if (file.exists()) {
+            try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                learnedWords.read(in);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed reading " + file + ": " + e);
+            }
+        }
+        return learnedWords;
+    }
+
+    private void writeLearnedWords(String name, LearnedWords learnedWords) {
+        File file = learnedWordsFile(name);
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            learnedWords.write(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed writing " + file + ": " + e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Failed replacing " + file);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.inputmethodservice.InputMethodService;
+import android.view.inputmethod.InputConnection;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * A copy of the editor's text around the cursor, so reading it doesn't cost a synchronous
+ * binder call to the target app each time. It follows our own edits as EditorOutput sends
+ * them, and the selection the editor reports. When the editor changes on its own, the
+ * mirror is invalidated and the next read queries the editor again.
+ * <p>
+ * Only call from the main thread, after flushing EditorOutput.
+ */
+public class EditorMirror {
+
+    // How much text is read on each side of the cursor when refilling
+    static final int WINDOW = 1024;
+    // The most text kept as our edits grow the window
+    private static final int MAX_TEXT = 4 * WINDOW;
+    // Selections our own edits will be reported with, oldest first
+    private static final int EXPECTED_SELECTIONS = 8;
+
+    private final InputMethodService mService;
+
+    // The text from editor offset mTextStart. Only meaningful while mValid.
+    private final StringBuilder mText = new StringBuilder(MAX_TEXT + WINDOW);
+    private int mTextStart = 0;
+    private boolean mValid = false;
+    // Whether mText reaches the start or the end of the editor's text
+    private boolean mHasStart = false;
+    private boolean mHasEnd = false;
+
+    // The selection, even while the text is unknown. -1 when unknown.
+    private int mSelectionStart = -1;
+    private int mSelectionEnd = -1;
+
+    // The selections the editor will report for our edits, so they aren't taken as its own changes
+    private final int[] mExpectedStarts = new int[EXPECTED_SELECTIONS];
+    private final int[] mExpectedEnds = new int[EXPECTED_SELECTIONS];
+    private int mExpectedCount = 0;
+
+    // Read from dump() on a binder thread
+    private volatile long mHits = 0;
+    private volatile long mMisses = 0;
+    private volatile long mInvalidations = 0;
+
+    public EditorMirror(InputMethodService service) {
+        mService = service;
+    }
+
+    /**
+     * Starts over for a new editor, whose text is unknown
+     */
+    public void reset(int selectionStart, int selectionEnd) {
+        mSelectionStart = Math.min(selectionStart, selectionEnd);
+        mSelectionEnd = Math.max(selectionStart, selectionEnd);
+        mExpectedCount = 0;
+        invalidate();
+    }
+
+    public void invalidate() {
+        if (mValid) mInvalidations++;
+        mValid = false;
+        mText.setLength(0);
+    }
+
+    /**
+     * @return Up to n characters before the selection, or null if the editor has none to give
+     */
+    public CharSequence getTextBeforeCursor(int n) {
+        if (mSelectionStart < 0) return null;
+        if (!covers(mSelectionStart - n, mSelectionStart) && !refill(n)) return null;
+        int start = Math.max(mTextStart, mSelectionStart - n);
+        return mText.subSequence(start - mTextStart, mSelectionStart - mTextStart);
+    }
+
+    /**
+     * @return Up to n characters after the selection, or null if the editor has none to give
+     */
+    public CharSequence getTextAfterCursor(int n) {
+        if (mSelectionEnd < 0) return null;
+        if (!covers(mSelectionEnd, mSelectionEnd + n) && !refill(n)) return null;
+        int end = Math.min(mTextStart + mText.length(), mSelectionEnd + n);
+        return mText.subSequence(mSelectionEnd - mTextStart, end - mTextStart);
+    }
+
+    public CharSequence getSelectedText() {
+        if (mSelectionStart < 0) return null;
+        if (!covers(mSelectionStart, mSelectionEnd) && !refill(0)) return null;
+        return mText.subSequence(mSelectionStart - mTextStart, mSelectionEnd - mTextStart);
+    }
+
+    /**
+     * Whether the mirror has the editor's text from start to end, as far as the text goes
+     */
+    private boolean has(int start, int end) {
+        return mValid && (start >= mTextStart || mHasStart) && (end <= mTextStart + mText.length() || mHasEnd);
+    }
+
+    /**
+     * Like has(), counting a hit for a read served from the mirror
+     */
+    private boolean covers(int start, int end) {
+        boolean covered = has(start, end);
+        if (covered) mHits++;
+        return covered;
+    }
+
+    /**
+     * Reads the text around the selection from the editor
+     *
+     * @param n The least to read on each side
+     */
+    private boolean refill(int n) {
+        mMisses++;
+        InputConnection ic = mService.getCurrentInputConnection();
+        if (ic == null) return false;
+
+        int window = Math.max(n, WINDOW);
+        CharSequence before = ic.getTextBeforeCursor(window, 0);
+        CharSequence after = ic.getTextAfterCursor(window, 0);
+        CharSequence selected = mSelectionStart == mSelectionEnd ? "" : ic.getSelectedText(0);
+        if (before == null || after == null || selected == null) {
+            invalidate();
+            return false;
+        }
+
+        mText.setLength(0);
+        mText.append(before).append(selected).append(after);
+        mTextStart = mSelectionStart - before.length();
+        mSelectionEnd = mSelectionStart + selected.length();
+        mHasStart = before.length() < window;
+        mHasEnd = after.length() < window;
+        mValid = true;
+        return true;
+    }
+
+    /**
+     * We replaced the selection with text, leaving the cursor after it
+     */
+    public void onCommitText(CharSequence text) {
+        if (mSelectionStart < 0) return;
+        if (mValid && !has(mSelectionStart, mSelectionEnd)) invalidate();
+        if (mValid) mText.replace(mSelectionStart - mTextStart, mSelectionEnd - mTextStart, text.toString());
+        mSelectionStart = mSelectionEnd = mSelectionStart + text.length();
+        if (mValid) trim();
+        expect();
+    }
+
+    /**
+     * We deleted chars before the cursor
+     */
+    public void onDeleteBefore(int chars) {
+        if (mSelectionStart < 0) return;
+        int start = Math.max(0, mSelectionStart - chars);
+        if (mValid && !has(start, mSelectionStart)) invalidate();
+        if (mValid) mText.delete(Math.max(0, start - mTextStart), mSelectionStart - mTextStart);
+        mSelectionStart = mSelectionEnd = start;
+        expect();
+    }
+
+    /**
+     * We moved the selection
+     */
+    public void onSetSelection(int start, int end) {
+        mSelectionStart = Math.min(start, end);
+        mSelectionEnd = Math.max(start, end);
+        expect();
+    }
+
+    /**
+     * The editor reported its selection, for our edits or for its own changes
+     */
+    public void onUpdateSelection(int selectionStart, int selectionEnd) {
+        int start = Math.min(selectionStart, selectionEnd);
+        int end = Math.max(selectionStart, selectionEnd);
+        for (int i = 0; i < mExpectedCount; i++) {
+            if (mExpectedStarts[i] == start && mExpectedEnds[i] == end) {
+                // One of ours. The reports of the edits before it may have been merged into it.
+                dropExpected(i + 1);
+                return;
+            }
+        }
+
+        // The user or the app changed something, and we can't tell if it was only the selection
+        mExpectedCount = 0;
+        invalidate();
+        mSelectionStart = start;
+        mSelectionEnd = end;
+    }
+
+    private void expect() {
+        if (mExpectedCount == EXPECTED_SELECTIONS) dropExpected(1);
+        mExpectedStarts[mExpectedCount] = mSelectionStart;
+        mExpectedEnds[mExpectedCount] = mSelectionEnd;
+        mExpectedCount++;
+    }
+
+    private void dropExpected(int count) {
+        System.arraycopy(mExpectedStarts, count, mExpectedStarts, 0, mExpectedCount - count);
+        System.arraycopy(mExpectedEnds, count, mExpectedEnds, 0, mExpectedCount - count);
+        mExpectedCount -= count;
+    }
+
+    /**
+     * Keeps the window around the selection once our typing has grown it past MAX_TEXT
+     */
+    private void trim() {
+        int excess = mText.length() - MAX_TEXT;
+        if (excess <= 0) return;
+        int before = mSelectionStart - mTextStart;
+        int after = mTextStart + mText.length() - mSelectionEnd;
+        if (before > after) {
+            int cut = Math.min(excess, before);
+            mText.delete(0, cut);
+            mTextStart += cut;
+            mHasStart = false;
+        } else {
+            int cut = Math.min(excess, after);
+            mText.setLength(mText.length() - cut);
+            mHasEnd = false;
+        }
+    }
+
+    public void dump(PrintWriter out) {
+        long hits = mHits;
+        long misses = mMisses;
+        out.println(String.format(Locale.ROOT, "Editor mirror: %d reads from the mirror, %d from the editor (%.1f%% hits), %d invalidations",
+                hits, misses, hits + misses == 0 ? 0 : 100.0 * hits / (hits + misses), mInvalidations));
+    }
+}
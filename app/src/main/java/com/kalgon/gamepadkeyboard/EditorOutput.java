@@ -0,0 +1,304 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.inputmethodservice.InputMethodService;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.text.InputType;
+import android.view.KeyEvent;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+
+import java.io.PrintWriter;
+
+/**
+ * Everything the keyboard sends to the editor goes through here. Every call to the
+ * InputConnection is a binder round-trip to the target app, so:
+ * <ul>
+ * <li>Consecutive text is coalesced into a single commitText.</li>
+ * <li>A burst of output is wrapped in one beginBatchEdit/endBatchEdit, flushed right
+ * after the input events already queued on the main thread are handled.</li>
+ * <li>Space, backspace and enter use direct editor operations instead of synthesized
+ * KeyEvents, except for editors that only understand key events.</li>
+ * <li>The text around the cursor is mirrored locally, so reading it rarely needs the editor.</li>
+ * </ul>
+ */
+public class EditorOutput {
+
+    private final InputMethodService mService;
+    private final Handler mHandler;
+    private final LatencyStats mLatencyStats;
+    private final EditorMirror mMirror;
+
+    private final StringBuilder mPendingText = new StringBuilder();
+    private InputConnection mBatchConnection = null;
+    private boolean mFlushScheduled = false;
+
+    // The selection as last reported by the editor, adjusted for our own edits. -1 when unknown.
+    private int mSelectionStart = -1;
+    private int mSelectionEnd = -1;
+
+    // Editors with TYPE_NULL (terminals, games...) don't handle text, only key events
+    private boolean mNeedsKeyEvents = false;
+    private boolean mMultiLine = false;
+    private int mEnterAction = EditorInfo.IME_ACTION_NONE;
+
+    // The event time of the oldest input not sent yet, then of the oldest input sent but
+    // not reported back by the editor. 0 when none.
+    private long mPendingInputTime = 0;
+    private long mSentInputTime = 0;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFlushScheduled = false;
+            flush();
+        }
+    };
+
+    public EditorOutput(InputMethodService service, Handler handler, LatencyStats latencyStats) {
+        mService = service;
+        mHandler = handler;
+        mLatencyStats = latencyStats;
+        mMirror = new EditorMirror(service);
+    }
+
+    /**
+     * Sends what is pending, so the mirror of the editor's text is up to date, and returns it
+     */
+    public EditorMirror readMirror() {
+        flush();
+        return mMirror;
+    }
+
+    /**
+     * Marks the output that follows as caused by an input event, to measure how long it
+     * takes to land in the editor
+     *
+     * @param eventTime The event's time, in uptime milliseconds
+     */
+    public void markInput(long eventTime) {
+        if (mPendingInputTime == 0) mPendingInputTime = eventTime;
+    }
+
+    public void startInput(EditorInfo attribute) {
+        flush();
+
+        mSelectionStart = attribute.initialSelStart;
+        mSelectionEnd = attribute.initialSelEnd;
+        mMirror.reset(mSelectionStart, mSelectionEnd);
+        mNeedsKeyEvents = attribute.inputType == InputType.TYPE_NULL;
+        mMultiLine = (attribute.inputType & InputType.TYPE_TEXT_FLAG_MULTI_LINE) != 0;
+
+        int action = attribute.imeOptions & EditorInfo.IME_MASK_ACTION;
+        boolean noEnterAction = (attribute.imeOptions & EditorInfo.IME_FLAG_NO_ENTER_ACTION) != 0;
+        mEnterAction = noEnterAction || action == EditorInfo.IME_ACTION_UNSPECIFIED ?
+                EditorInfo.IME_ACTION_NONE : action;
+    }
+
+    public void finishInput() {
+        flush();
+        mSelectionStart = mSelectionEnd = -1;
+        mSentInputTime = 0;
+        mMirror.reset(-1, -1);
+    }
+
+    public void updateSelection(int selectionStart, int selectionEnd) {
+        if (mSentInputTime != 0) {
+            mLatencyStats.recordSince(LatencyStats.END_TO_END, mSentInputTime);
+            mSentInputTime = 0;
+        }
+        mMirror.onUpdateSelection(selectionStart, selectionEnd);
+
+        // Anything still pending will move the cursor again once it's flushed
+        if (mPendingText.length() == 0) {
+            mSelectionStart = selectionStart;
+            mSelectionEnd = selectionEnd;
+        }
+    }
+
+    /**
+     * Whether the editor reports its selection, so the cursor can be moved with setSelection
+     */
+    public boolean knowsSelection() {
+        return !mNeedsKeyEvents && mSelectionStart >= 0 && mSelectionEnd >= 0;
+    }
+
+    public int getSelectionStart() {
+        return mSelectionStart;
+    }
+
+    public int getSelectionEnd() {
+        return mSelectionEnd;
+    }
+
+    /**
+     * Moves the cursor or the selection in a single call, after what is still pending
+     */
+    public void setSelection(int start, int end) {
+        flush();
+        InputConnection ic = mService.getCurrentInputConnection();
+        if (ic == null) return;
+        ic.setSelection(start, end);
+        mMirror.onSetSelection(start, end);
+        mSelectionStart = start;
+        mSelectionEnd = end;
+    }
+
+    /**
+     * The mirror's hits and misses, from any thread
+     */
+    public void dumpMirror(PrintWriter out) {
+        mMirror.dump(out);
+    }
+
+    public void commitText(CharSequence text) {
+        mPendingText.append(text);
+        scheduleFlush();
+    }
+
+    public void space() {
+        if (mNeedsKeyEvents) {
+            sendKey(KeyEvent.KEYCODE_SPACE);
+        } else {
+            commitText(" ");
+        }
+    }
+
+    public void deleteBackward() {
+        if (mNeedsKeyEvents) {
+            sendKey(KeyEvent.KEYCODE_DEL);
+            return;
+        }
+
+        // Typed and deleted before reaching the editor
+        int pendingLength = mPendingText.length();
+        if (pendingLength > 0) {
+            int codePoint = Character.codePointBefore(mPendingText, pendingLength);
+            mPendingText.setLength(pendingLength - Character.charCount(codePoint));
+            return;
+        }
+
+        InputConnection ic = beginBatch();
+        if (ic == null) return;
+
+        if (mSelectionStart >= 0 && mSelectionStart != mSelectionEnd) {
+            // Like the delete key, remove the selection
+            ic.commitText("", 1);
+            mMirror.onCommitText("");
+            mSelectionEnd = mSelectionStart = Math.min(mSelectionStart, mSelectionEnd);
+        } else {
+            // How many chars the code point takes, from the mirror, so the selection can follow.
+            // Without the text, a single char is the best guess until the editor reports it.
+            CharSequence before = mMirror.getTextBeforeCursor(2);
+            int chars = 1;
+            if (before != null) {
+                chars = before.length() == 0 ? 0 : Character.charCount(Character.codePointBefore(before, before.length()));
+            }
+            ic.deleteSurroundingTextInCodePoints(1, 0);
+            mMirror.onDeleteBefore(chars);
+            if (mSelectionStart >= 0) {
+                mSelectionStart = mSelectionEnd = Math.max(0, mSelectionStart - chars);
+            }
+        }
+    }
+
+    public void enter() {
+        if (mNeedsKeyEvents) {
+            sendKey(KeyEvent.KEYCODE_ENTER);
+        } else if (mEnterAction != EditorInfo.IME_ACTION_NONE) {
+            InputConnection ic = beginBatch();
+            if (ic != null) ic.performEditorAction(mEnterAction);
+            // The app may do anything with the text
+            mMirror.invalidate();
+        } else if (mMultiLine) {
+            commitText("\n");
+        } else {
+            // What enter does in a single line field without an action is up to the app
+            sendKey(KeyEvent.KEYCODE_ENTER);
+        }
+    }
+
+    /**
+     * Sends a key down / key up pair. Only for keys with no direct equivalent, such as
+     * the DPAD, or for editors that need key events.
+     */
+    public void sendKey(int keyCode) {
+        InputConnection ic = beginBatch();
+        if (ic == null) return;
+
+        long eventTime = SystemClock.uptimeMillis();
+        ic.sendKeyEvent(new KeyEvent(eventTime, eventTime, KeyEvent.ACTION_DOWN, keyCode, 0));
+        ic.sendKeyEvent(new KeyEvent(eventTime, eventTime, KeyEvent.ACTION_UP, keyCode, 0));
+        // We can't tell where the cursor went
+        mSelectionStart = mSelectionEnd = -1;
+        mMirror.reset(-1, -1);
+    }
+
+    /**
+     * Sends everything pending to the editor and closes the batch
+     */
+    public void flush() {
+        final long start = System.nanoTime();
+        final boolean batched = mBatchConnection != null;
+        final int pending = mPendingText.length();
+        boolean sent = batched;
+        InputTracer.begin(InputTracer.COMMIT_SECTION);
+        if (mPendingText.length() > 0) {
+            InputConnection ic = mBatchConnection != null ? mBatchConnection : mService.getCurrentInputConnection();
+            if (ic != null) {
+                commitPendingText(ic);
+                sent = true;
+            } else {
+                mPendingText.setLength(0);
+            }
+        }
+        if (mBatchConnection != null) {
+            mBatchConnection.endBatchEdit();
+            mBatchConnection = null;
+        }
+        InputTracer.end();
+
+        if (sent) {
+            InputTracer.event(InputTracer.COMMIT, pending, batched ? 1 : 0);
+            mLatencyStats.record(LatencyStats.COMMIT, System.nanoTime() - start);
+            if (mSentInputTime == 0) mSentInputTime = mPendingInputTime;
+        }
+        mPendingInputTime = 0;
+    }
+
+    /**
+     * Opens a batch edit if there isn't one, and commits the pending text so it
+     * keeps its order with what follows
+     */
+    private InputConnection beginBatch() {
+        InputConnection ic = mService.getCurrentInputConnection();
+        if (ic == null) return null;
+
+        if (mBatchConnection != ic) {
+            if (mBatchConnection != null) flush();
+            ic.beginBatchEdit();
+            mBatchConnection = ic;
+        }
+        if (mPendingText.length() > 0) {
+            commitPendingText(ic);
+        }
+        scheduleFlush();
+        return ic;
+    }
+
+    private void commitPendingText(InputConnection ic) {
+        ic.commitText(mPendingText.toString(), 1);
+        mMirror.onCommitText(mPendingText);
+        if (mSelectionStart >= 0) {
+            mSelectionStart = mSelectionEnd = Math.min(mSelectionStart, mSelectionEnd) + mPendingText.length();
+        }
+        mPendingText.setLength(0);
+    }
+
+    private void scheduleFlush() {
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mHandler.post(mFlushRunnable);
+        }
+    }
+}
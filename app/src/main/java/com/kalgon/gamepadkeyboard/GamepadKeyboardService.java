@@ -1,13 +1,17 @@
 package com.kalgon.gamepadkeyboard;
 
+import android.app.AppOpsManager;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.graphics.PixelFormat;
 import android.inputmethodservice.InputMethodService;
 import android.os.Handler;
-import android.provider.Settings;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.text.InputType;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.InputDevice;
@@ -24,33 +28,57 @@ import android.widget.TextView;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceManager;
 
+import com.kalgon.gamepadkeyboard.engine.GestureDecoder;
+import com.kalgon.gamepadkeyboard.engine.GesturePath;
+import com.kalgon.gamepadkeyboard.engine.InputEngine;
+import com.kalgon.gamepadkeyboard.engine.InputRecording;
+import com.kalgon.gamepadkeyboard.engine.JoystickBatch;
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+import com.kalgon.gamepadkeyboard.engine.KeyboardSet;
+import com.kalgon.gamepadkeyboard.engine.LetterModel;
+import com.kalgon.gamepadkeyboard.engine.WordCompleter;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-public class GamepadKeyboardService extends InputMethodService implements View.OnTouchListener, SharedPreferences.OnSharedPreferenceChangeListener {
+public class GamepadKeyboardService extends InputMethodService implements View.OnTouchListener, SharedPreferences.OnSharedPreferenceChangeListener, InputEngine.Listener, KeyRepeater.Callback, RenderScheduler.Callback {
 
-    private final boolean DEBUG = true;
+    // Lets a regular keyboard stand in for the controller, see debugKeyCodeToButton()
+    private static final boolean DEBUG = BuildConfig.DEBUG;
 
     //    private InputMethodManager mInputMethodManager;
     private View mView = null;
+    private DiamondViews mDiamondViews = null;
     private WindowManager mWindowManager;
     private SharedPreferences mPrefs;
     private SharedPreferences mSettingsPrefs;
+    // Rebuilt whenever a setting or the overlay permission changes, so the event path never reads prefs
+    private volatile KeyboardSettings mSettings;
+    private AppOpsManager mAppOps;
 
-    // Position of the stick (which represents the letters available). 0-8 where
-    // 0 is centered, 1 is 12 o'clock and advancing clockwise every eighth
-    private int mStickPosition = 0;
-    private int mRightStickPosition = 0;
+    // All the stick, hat and button logic lives in the engine
+    private final InputEngine mEngine = new InputEngine(this);
 
-    private KeyMap mCurrentKeyboard = null;
-    private ArrayList<KeyMap> mKeyboards = new ArrayList<>();
-    private int mKeyboardIndex = 0;
-    private KeyMap mSymbols = null;
-    private boolean mSymbolsShown = false;
+    // Reused for every MotionEvent, so walking the historical samples doesn't allocate
+    private final JoystickBatch mJoystickBatch = new JoystickBatch(16);
+    // The axis ranges and profile of each controller, resolved on its first event
+    private ControllerCalibrations mCalibrations;
 
-    private boolean mShift = false;
+    // The languages of the last keyboard set requested from the repository
+    private Set<String> mRequestedLanguages = null;
 
     private boolean mViewAddedToWindowManager = false;
     private int mViewX = 0;
@@ -59,10 +87,56 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
     private int mViewDeltaY = 0;
 
     private boolean mUsingGamepad = false;
-    private final long KEY_REPEAT_MS = 200;
 
     final Handler handler = new Handler();
-    private int mKeyRepeat = 0;
+    // Applies the stick, labels, candidates and window position once per frame
+    private final RenderScheduler mRenderer = new RenderScheduler(this);
+
+    // Time spent in each stage of the input path, see dump()
+    private final LatencyStats mLatencyStats = new LatencyStats();
+    // Accumulates the view update times, so the engine's time can leave them out
+    private long mViewNanos = 0;
+    private TextView mLatencyOverlay = null;
+    private final StringBuilder mLatencySummary = new StringBuilder();
+    private static final long LATENCY_OVERLAY_REFRESH_MS = 500;
+
+    private final EditorOutput mOutput = new EditorOutput(this, handler, mLatencyStats);
+
+    // Debug: records each session for replaying on a JVM, see InputRecording
+    private static final String RECORDINGS_DIR = "recordings";
+    private SessionRecorder mRecorder = null;
+    // Writes the recordings, so they never wait behind the dictionaries or delay the input path
+    private final ExecutorService mRecordingExecutor = Executors.newSingleThreadExecutor();
+    // Recording waits for the keymaps, which its header names
+    private boolean mRecordingPending = false;
+
+    // Repeats held buttons, and the right stick's DPAD keys on their own, so pressing a
+    // button while the stick is held doesn't stop the cursor
+    private final KeyRepeater mKeyRepeater = new KeyRepeater(handler, this);
+    private final KeyRepeater mCursorRepeater = new KeyRepeater(handler, this);
+    // Moves the cursor sideways at the right stick's speed, by words while the right stick is pressed
+    private final AnalogCursor mAnalogCursor = new AnalogCursor(handler, mOutput, mEngine);
+    private boolean mWordJumps = false;
+
+    // Word completion follows everything we type, and resets when the cursor moves elsewhere
+    private final WordCompleter mCompleter = new WordCompleter(DiamondViews.CANDIDATES);
+    private final String[] mCandidates = new String[DiamondViews.CANDIDATES];
+    private int mCandidateCount = 0;
+    private int mSelectedCandidate = 0;
+    private String mCompletionLanguage = null;
+    // Hints at the likely positions of the next letter
+    private LetterModel mLetterModel = null;
+    private int mLetterHints = 0;
+    // Turns the left stick's path while R2 is held into words
+    private GestureDecoder mGestureDecoder = null;
+    // The word the last gesture typed, which accepting one of its other candidates replaces
+    private String mGestureWord = null;
+    // The keymap the predictions were last made for
+    private KeyMap mPredictedKeyMap = null;
+    // False in fields such as passwords, where suggesting and learning words is wrong
+    private boolean mCompletionAllowed = false;
+    // Earcons and vibrations for the blind keyboard, null with the other keyboards
+    private BlindFeedback mBlindFeedback = null;
 
     // DEBUG
     private static class DebugVariables {
@@ -95,11 +169,91 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
 
         mSettingsPrefs = PreferenceManager.getDefaultSharedPreferences(this);
         mSettingsPrefs.registerOnSharedPreferenceChangeListener(this);
+        mSettings = KeyboardSettings.read(this, mSettingsPrefs);
+        applyTunables(mSettings);
+        updateBlindFeedback();
+
+        // Granting or revoking the overlay permission doesn't touch the preferences
+        mAppOps = (AppOpsManager) getSystemService(APP_OPS_SERVICE);
+        mAppOps.startWatchingMode(AppOpsManager.OPSTR_SYSTEM_ALERT_WINDOW, getPackageName(), mOverlayPermissionListener);
+
+        // Warm up before the first show: the keymaps load in the background right away
+        // instead of waiting for onInitializeInterface, and the view is inflated as soon
+        // as the main thread is idle
+        setAvailableKeyboards();
+        Looper.myQueue().addIdleHandler(mWarmUp);
+
+        mCalibrations = new ControllerCalibrations(this);
+        mCalibrations.register(handler);
+    }
+
+    private final MessageQueue.IdleHandler mWarmUp = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (mView == null) {
+                final long start = System.nanoTime();
+                createView();
+                // A first measure pass fills the text measurement caches too
+                mView.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
+                Log.i("GamepadKeyboard", "Warmed up the keyboard view in " + (System.nanoTime() - start) / 1000 + " us");
+            }
+            return false;
+        }
+    };
+
+    private final AppOpsManager.OnOpChangedListener mOverlayPermissionListener = new AppOpsManager.OnOpChangedListener() {
+        @Override
+        public void onOpChanged(String op, String packageName) {
+            // Called on a binder thread
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    KeyboardSettings settings = KeyboardSettings.read(GamepadKeyboardService.this, mSettingsPrefs);
+                    if (settings.canDrawOverlays != mSettings.canDrawOverlays) {
+                        Log.i("GamepadKeyboard", "Overlay permission changed: " + settings.canDrawOverlays);
+                        mSettings = settings;
+                        clearViewParent();
+                    }
+                }
+            });
+        }
+    };
+
+    /**
+     * Hands the stick deadzone and the repeat timing to the engine and the repeater
+     */
+    private void applyTunables(KeyboardSettings settings) {
+        mEngine.setQuantizers(settings.leftQuantizer(), settings.rightQuantizer());
+        settings.applyTo(mKeyRepeater);
+        settings.applyTo(mCursorRepeater);
+    }
+
+    /**
+     * Prepares the blind keyboard's feedback when it's selected, and frees it otherwise.
+     * Its audio track is only open while the keyboard is shown.
+     */
+    private void updateBlindFeedback() {
+        if (mBlindFeedback != null) {
+            mBlindFeedback.close();
+            mBlindFeedback = null;
+        }
+        if (mSettings.blind) {
+            mBlindFeedback = new BlindFeedback(this, mSettings.blindVibration);
+            if (mUsingGamepad) mBlindFeedback.open();
+        }
     }
 
     @Override
     public void onDestroy() {
         mSettingsPrefs.unregisterOnSharedPreferenceChangeListener(this);
+        mAppOps.stopWatchingMode(mOverlayPermissionListener);
+        Looper.myQueue().removeIdleHandler(mWarmUp);
+        mCalibrations.unregister();
+        stopRecording();
+        // What was recorded still gets written
+        mRecordingExecutor.shutdown();
+        if (mBlindFeedback != null) mBlindFeedback.close();
+        mRenderer.cancel(RenderScheduler.ALL);
 
         Log.i("GamepadKeyboard", "onDestroy");
         removeViewFromWindowManager();
@@ -117,31 +271,45 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
 
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-        Log.d("GamepadKeyboard", "onSharedPreferenceChanged");
+        InputTracer.event(InputTracer.SETTINGS_CHANGED);
+        mSettings = KeyboardSettings.read(this, sharedPreferences);
 
         if (key.equals("languages")) {
-            setAvailableKeyboards(true);
+            setAvailableKeyboards();
         } else if (key.equals("draw_on_top")) {
             clearViewParent();
+        } else if (key.equals("keyboard_type") || key.equals("blind_vibration")) {
+            updateBlindFeedback();
+        } else if (key.equals("word_completion")) {
+            updatePredictions();
+        } else if (key.equals("letter_hints")) {
+            updatePredictions();
+        } else if (key.equals("latency_overlay")) {
+            updateLatencyOverlay();
+        } else if (key.equals("record_input")) {
+            if (!mSettings.recordInput) stopRecording();
+        } else if (key.equals("stick_deadzone") || key.equals("repeat_delay") || key.equals("repeat_interval")) {
+            applyTunables(mSettings);
         }
     }
 
-    private void setAvailableKeyboards(boolean resetLanguageKeyboards) {
-        try {
-            if (mSymbols == null) {
-                mSymbols = new KeyMap(getApplicationContext(), R.xml.symbols);
-            }
-            if (mKeyboards.size() == 0 || resetLanguageKeyboards) {
-                mKeyboards.clear();
+    /**
+     * Loads the selected languages in the background. The engine keeps using the
+     * current keyboards until the new set is ready, so this never blocks.
+     */
+    private void setAvailableKeyboards() {
+        Set<String> languages = mSettings.languages;
+        if (languages.equals(mRequestedLanguages)) return;
 
-                for (String keyboardName : mSettingsPrefs.getStringSet("languages", null)) {
-                    int resourceId = getResources().getIdentifier(keyboardName, "xml", getPackageName());
-                    mKeyboards.add(new KeyMap(getApplicationContext(), resourceId));
-                }
+        mRequestedLanguages = languages;
+        KeyMapRepository.get(this).requestKeyboards(mRequestedLanguages, new KeyMapRepository.Callback() {
+            @Override
+            public void onKeyboardsLoaded(KeyboardSet keyboards) {
+                mEngine.setKeyboards(keyboards);
+                // A recording names the keymaps it was made with
+                if (mRecordingPending || mRecorder != null) startRecording();
             }
-        } catch (Exception e) {
-            Log.e("onInitializeInterface", e.toString());
-        }
+        });
     }
 
     /**
@@ -150,20 +318,15 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
      */
     @Override
     public void onInitializeInterface() {
-        Log.d("GamepadKeyboard", "onInitializeInterface");
-        // TODO: How to do this only if something really changed?
-
-        setAvailableKeyboards(false);
+        // Only loads anything if the languages really changed
+        setAvailableKeyboards();
     }
 
     private boolean usingFloatingKeyboard() {
-        return Settings.canDrawOverlays(getApplicationContext()) &&
-                mSettingsPrefs.getBoolean("draw_on_top", true) &&
-                !usingBlindKeyboard();
+        return mSettings.floating;
     }
 
     private void addViewToWindowManager() {
-        Log.d("addViewToWindowManager", "mViewAddedToWindowManager = " + mViewAddedToWindowManager);
         if (!mViewAddedToWindowManager && mView != null) {
             WindowManager.LayoutParams params = new WindowManager.LayoutParams(
                     WindowManager.LayoutParams.WRAP_CONTENT,
@@ -176,29 +339,35 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
             params.x = mViewX;
             params.y = mViewY;
 
-            Log.d("addViewToWindowManager", "mView parent = " + mView.getParent());
             mWindowManager.addView(mView, params);
+            InputTracer.event(InputTracer.WINDOW_ADDED, mViewX, mViewY);
 
             mViewAddedToWindowManager = true;
         }
     }
 
     private void removeViewFromWindowManager() {
-        Log.d("removeViewFromWindowManager", "mViewAddedToWindowManager = " + mViewAddedToWindowManager);
         if (mViewAddedToWindowManager) {
-            Log.d("removeViewFromWindowManager", "mView parent = " + mView.getParent());
+            // A drag may still be pending, and the removed view can't be moved
+            mRenderer.cancel(RenderScheduler.WINDOW);
             mWindowManager.removeView(mView);
+            InputTracer.event(InputTracer.WINDOW_REMOVED, mViewX, mViewY);
             mViewAddedToWindowManager = false;
-
-            SharedPreferences.Editor editor = mPrefs.edit();
-            editor.putInt(getString(R.string.viewX), mViewX);
-            editor.putInt(getString(R.string.viewY), mViewY);
-            editor.apply();
         }
     }
 
+    /**
+     * Remembers where the floating keyboard was dragged to, once the drag ends
+     */
+    private void saveViewPosition() {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        editor.putInt(getString(R.string.viewX), mViewX);
+        editor.putInt(getString(R.string.viewY), mViewY);
+        editor.apply();
+    }
+
     private boolean usingBlindKeyboard() {
-        return mSettingsPrefs.getString("keyboard_type", "full").equals("blind");
+        return mSettings.blind;
     }
 
     /**
@@ -209,12 +378,10 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
      */
     @Override
     public View onCreateInputView() {
-        Log.i("GamepadKeyboard", "onCreateInputView");
+        InputTracer.event(InputTracer.CREATE_INPUT_VIEW);
         if (mView == null) {
-            mView = getLayoutInflater().inflate(R.layout.diamond_ui, null);
-            setupView();
-
-            mView.setOnTouchListener(this);
+            // The warm-up didn't get to it
+            createView();
         }
 
         if (usingFloatingKeyboard() || usingBlindKeyboard()) {
@@ -224,19 +391,50 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
         return mView;
     }
 
+    /**
+     * Inflates diamond_ui and resolves its views, once per service
+     */
+    private void createView() {
+        mView = getLayoutInflater().inflate(R.layout.diamond_ui, null);
+        mDiamondViews = new DiamondViews(mView);
+        mLatencyOverlay = mView.findViewById(R.id.latency_overlay);
+        setupView();
+
+        mView.setOnTouchListener(this);
+    }
+
     private void setupView() {
-        Log.d("GamepadKeyboard", "setupView");
-        final char[] buttons = {'A', 'B', 'X', 'Y'};
-        for (int i = 0; i < 9; i++) {
-            View circle = mView.findViewById(getResources().getIdentifier("diamond_" + i, "id", getPackageName()));
-            for (int b = 0; b < buttons.length; b++) {
-                TextView buttonView = circle.findViewById(
-                        getResources().getIdentifier(String.valueOf(buttons[b]), "id", getPackageName()));
-                String letter = mCurrentKeyboard.getKey(i, b, mShift);
-                buttonView.setText(letter);
-            }
+        InputTracer.event(InputTracer.SETUP_VIEW);
+        if (mView == null || mEngine.getCurrentKeyboard() == null) return;
+
+        // Before the view shows, so not at the next frame
+        mRenderer.cancel(RenderScheduler.VIEWS);
+        onRender(RenderScheduler.VIEWS);
+    }
+
+    @Override
+    public void onRender(int dirty) {
+        if (mView == null) return;
+        final long start = System.nanoTime();
+        InputTracer.begin(InputTracer.RENDER);
+        if ((dirty & RenderScheduler.LABELS) != 0 && mEngine.getCurrentKeyboard() != null) {
+            mDiamondViews.setLabels(mEngine.getCurrentKeyboard(), mEngine.isShift());
+        }
+        if ((dirty & RenderScheduler.CANDIDATES) != 0) {
+            mDiamondViews.setCandidates(mCandidates, mCandidateCount, mSelectedCandidate);
+            mDiamondViews.setHints(mLetterHints);
         }
-        highlightStickPosition();
+        if ((dirty & RenderScheduler.STICK) != 0) {
+            mDiamondViews.highlight(mEngine.getStickPosition(), mSettings.keyboardType);
+        }
+        if ((dirty & RenderScheduler.WINDOW) != 0 && mViewAddedToWindowManager) {
+            WindowManager.LayoutParams params = (WindowManager.LayoutParams) mView.getLayoutParams();
+            params.x = mViewX;
+            params.y = mViewY;
+            mWindowManager.updateViewLayout(mView, params);
+        }
+        InputTracer.end();
+        recordViewTime(start);
     }
 
     @Override
@@ -253,8 +451,12 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
      */
     @Override
     public void onStartInput(EditorInfo attribute, boolean restarting) {
-        Log.i("GamepadKeyboard", "onStartInput. restarting = " + restarting + ", Input type = " + attribute.inputType);
+        InputTracer.event(InputTracer.START_INPUT, attribute.inputType, restarting ? 1 : 0);
         super.onStartInput(attribute, restarting);
+        mOutput.startInput(attribute);
+        mCompletionAllowed = allowsCompletion(attribute);
+        mCompleter.reset();
+        updatePredictions();
 
         if (!restarting) {
             // We are now going to initialize our state based on the type of
@@ -265,13 +467,13 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
                 case InputType.TYPE_CLASS_PHONE:
                     // Numbers and dates default to the symbols keyboard, with
                     // no extra features.
-                    toggleSymbols(true);
+                    mEngine.startInput(true);
                     break;
 
                 default:
                     // For all unknown input types, default to the alphabetic
                     // keyboard with no special features.
-                    mCurrentKeyboard = mKeyboards.get(mKeyboardIndex);
+                    mEngine.startInput(false);
             }
         }
     }
@@ -282,15 +484,25 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
      */
     @Override
     public void onFinishInput() {
-        Log.i("GamepadKeyboard", "onFinishInput");
+        InputTracer.event(InputTracer.FINISH_INPUT);
+        mOutput.finishInput();
+        mCompleter.reset();
+        DictionaryRepository.get(this).saveLearnedWords();
 
         super.onFinishInput();
     }
 
     @Override
     public void onFinishInputView(boolean finishingInput) {
-        Log.i("GamepadKeyboard", "onFinishInputView");
+        InputTracer.event(InputTracer.FINISH_INPUT_VIEW);
         mUsingGamepad = false;
+        mKeyRepeater.stop();
+        mCursorRepeater.stop();
+        mAnalogCursor.stop();
+        mEngine.finishGesture(SystemClock.uptimeMillis());
+        if (mBlindFeedback != null) mBlindFeedback.close();
+        handler.removeCallbacks(mLatencyOverlayRefresh);
+        stopRecording();
 
         if (usingFloatingKeyboard()) {
             removeViewFromWindowManager();
@@ -301,16 +513,57 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
 
     @Override
     public void onStartInputView(EditorInfo attribute, boolean restarting) {
-        Log.i("GamepadKeyboard", "onStartInputView. restarting = " + restarting);
+        InputTracer.event(InputTracer.START_INPUT_VIEW, restarting ? 1 : 0);
         super.onStartInputView(attribute, restarting);
 
         if (usingFloatingKeyboard()) {
             addViewToWindowManager();
         }
         setupView();
+        updateLatencyOverlay();
+        if (mBlindFeedback != null) mBlindFeedback.open();
+        if (mSettings.recordInput) startRecording();
         mUsingGamepad = true;
     }
 
+    /**
+     * Starts a new recording in files/recordings. Pull it with
+     * adb shell run-as com.kalgon.gamepadkeyboard cat files/recordings/&lt;name&gt; &gt; session.gkr
+     */
+    private void startRecording() {
+        stopRecording();
+
+        KeyboardSet keyboards = mEngine.getKeyboards();
+        if (keyboards.size() == 0) {
+            // Not loaded yet, setAvailableKeyboards() starts it then
+            mRecordingPending = true;
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        for (KeyMap keyMap : keyboards.getLanguages()) {
+            names.add(keyMap.getName());
+        }
+        if (keyboards.getSymbols() != null) names.add(keyboards.getSymbols().getName());
+
+        // The file is only touched in the background
+        File dir = new File(getFilesDir(), RECORDINGS_DIR);
+        File file = new File(dir, "session-" + System.currentTimeMillis() + InputRecording.EXTENSION);
+        mRecorder = new SessionRecorder(mRecordingExecutor, file, names);
+        boolean symbols = keyboards.getSymbols() != null && mEngine.getCurrentKeyboard() == keyboards.getSymbols();
+        mRecorder.startInput(SystemClock.uptimeMillis(), symbols);
+    }
+
+    private void stopRecording() {
+        mRecordingPending = false;
+        if (mRecorder == null) return;
+        mRecorder.close();
+        mRecorder = null;
+    }
+
+    private void recordKey(boolean down, long time, int keyCode) {
+        if (mRecorder != null) mRecorder.key(down, time, keyCode);
+    }
+
     /**
      * Use this to monitor key events being delivered to the application.
      * We get first crack at them, and can either resume them or let them
@@ -318,9 +571,14 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
      */
     @Override
     public boolean onKeyDown(int keyCode, KeyEvent event) {
-        Log.d("GamepadKeyboard", "onKeyDown. Key = " + keyCode);
+        InputTracer.event(InputTracer.KEY_DOWN, keyCode, event.getRepeatCount());
+        if (!DEBUG && isKeyboardStandIn(keyCode)) return super.onKeyDown(keyCode, event);
 
         if (!mUsingGamepad) return false;
+        mLatencyStats.recordSince(LatencyStats.DISPATCH, event.getEventTime());
+        if (event.getRepeatCount() == 0) {
+            recordKey(true, event.getEventTime(), debugKeyCodeToButton(keyCode));
+        }
 
 //        if (System.currentTimeMillis() - lastToastTime > 1000){
 //            Toast.makeText(getApplicationContext(), "key = " + keyCode, Toast.LENGTH_SHORT).show();
@@ -354,28 +612,27 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
             case KeyEvent.KEYCODE_Y: // DEBUG
                 InputConnection ic = getCurrentInputConnection();
                 if (ic != null) {
-
-                    if (DEBUG) {
-                        if (keyCode == KeyEvent.KEYCODE_A) keyCode = KeyEvent.KEYCODE_BUTTON_A;
-                        if (keyCode == KeyEvent.KEYCODE_B) keyCode = KeyEvent.KEYCODE_BUTTON_B;
-                        if (keyCode == KeyEvent.KEYCODE_X) keyCode = KeyEvent.KEYCODE_BUTTON_X;
-                        if (keyCode == KeyEvent.KEYCODE_Y) keyCode = KeyEvent.KEYCODE_BUTTON_Y;
+                    // Holding the button repeats it with our own timing, not the system's
+                    if (event.getRepeatCount() == 0) {
+                        mOutput.markInput(event.getEventTime());
+                        mKeyRepeater.start(debugKeyCodeToButton(keyCode));
                     }
-
-                    String key = mCurrentKeyboard.getKey(mStickPosition, mCurrentKeyboard.keyCodeToButtonIndex(keyCode), mShift);
-                    ic.commitText(key, 1);
                     return true;
                 }
                 break;
 
             case KeyEvent.KEYCODE_BUTTON_R1:
             case KeyEvent.KEYCODE_R:  // DEBUG
-                keyDownUp(KeyEvent.KEYCODE_SPACE);
+                mOutput.space();
+                mCompleter.append(" ");
+                updatePredictions();
                 return true;
 
             case KeyEvent.KEYCODE_BUTTON_L1:
             case KeyEvent.KEYCODE_L:  // DEBUG
-                keyDownUp(KeyEvent.KEYCODE_DEL);
+                if (event.getRepeatCount() == 0) {
+                    mKeyRepeater.start(debugKeyCodeToButton(keyCode));
+                }
                 return true;
 
             case KeyEvent.KEYCODE_DPAD_UP: // DEBUG
@@ -411,14 +668,30 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
                 break;
 
             case KeyEvent.KEYCODE_BUTTON_R2:
+                // Enter on release, unless the stick moves meanwhile: then it's a gesture
+                if (event.getRepeatCount() == 0) mEngine.startGesture(event.getEventTime());
+                return true;
+
             case KeyEvent.KEYCODE_1: // DEBUG
-                keyDownUp(KeyEvent.KEYCODE_ENTER);
+                mOutput.enter();
+                mCompleter.append("\n");
+                updatePredictions();
+                return true;
+
+            case KeyEvent.KEYCODE_BUTTON_THUMBL:
+                if (mCandidateCount > 0) {
+                    mSelectedCandidate = (mSelectedCandidate + 1) % mCandidateCount;
+                    mRenderer.invalidate(RenderScheduler.CANDIDATES);
+                }
                 return true;
 
             case KeyEvent.KEYCODE_BUTTON_L2:
             case KeyEvent.KEYCODE_2: // DEBUG
-                mShift = true;
-                setupView();
+                mEngine.setShift(true);
+                return true;
+
+            case KeyEvent.KEYCODE_BUTTON_THUMBR:
+                setWordJumps(true);
                 return true;
         }
 
@@ -435,7 +708,7 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
                     || keyCode == KeyEvent.KEYCODE_8
                     || keyCode == KeyEvent.KEYCODE_9
                     || keyCode == KeyEvent.KEYCODE_0) {
-                updateHat(debugVars.hatX, debugVars.hatY);
+                mEngine.updateHat(debugVars.hatX, debugVars.hatY);
                 return true;
             }
         }
@@ -443,6 +716,54 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
         return super.onKeyDown(keyCode, event);
     }
 
+    // DEBUG: Lets a regular keyboard stand in for the gamepad buttons
+    private int debugKeyCodeToButton(int keyCode) {
+        if (!DEBUG) return keyCode;
+
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_A:
+                return KeyEvent.KEYCODE_BUTTON_A;
+            case KeyEvent.KEYCODE_B:
+                return KeyEvent.KEYCODE_BUTTON_B;
+            case KeyEvent.KEYCODE_X:
+                return KeyEvent.KEYCODE_BUTTON_X;
+            case KeyEvent.KEYCODE_Y:
+                return KeyEvent.KEYCODE_BUTTON_Y;
+            case KeyEvent.KEYCODE_L:
+                return KeyEvent.KEYCODE_BUTTON_L1;
+        }
+        return keyCode;
+    }
+
+    /**
+     * The keys debugKeyCodeToButton() and the DEBUG cases handle, which release builds
+     * leave to the editor
+     */
+    private static boolean isKeyboardStandIn(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_A:
+            case KeyEvent.KEYCODE_B:
+            case KeyEvent.KEYCODE_X:
+            case KeyEvent.KEYCODE_Y:
+            case KeyEvent.KEYCODE_L:
+            case KeyEvent.KEYCODE_R:
+            case KeyEvent.KEYCODE_S:
+            case KeyEvent.KEYCODE_D:
+            case KeyEvent.KEYCODE_1:
+            case KeyEvent.KEYCODE_2:
+            case KeyEvent.KEYCODE_7:
+            case KeyEvent.KEYCODE_8:
+            case KeyEvent.KEYCODE_9:
+            case KeyEvent.KEYCODE_0:
+            case KeyEvent.KEYCODE_DPAD_UP:
+            case KeyEvent.KEYCODE_DPAD_DOWN:
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                return true;
+        }
+        return false;
+    }
+
     // DEBUG
     private void updateDpadStickPosition() {
         float x = debugVars.dpadLeftRight;
@@ -453,12 +774,13 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
             y *= 0.75;
         }
 
-        updateStickPosition(x, y);
+        mEngine.updateStickPosition(x, y, SystemClock.uptimeMillis());
     }
 
     @Override
     public boolean onKeyUp(int keyCode, KeyEvent event) {
-        Log.i("GamepadKeyboard", "onKeyUp");
+        InputTracer.event(InputTracer.KEY_UP, keyCode);
+        if (!DEBUG && isKeyboardStandIn(keyCode)) return super.onKeyUp(keyCode, event);
         super.onKeyUp(keyCode, event);
 
         switch (keyCode) {
@@ -468,8 +790,22 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
         }
 
         if (!mUsingGamepad) return false;
+        recordKey(false, event.getEventTime(), debugKeyCodeToButton(keyCode));
 
         switch (keyCode) {
+            case KeyEvent.KEYCODE_BUTTON_A:
+            case KeyEvent.KEYCODE_BUTTON_B:
+            case KeyEvent.KEYCODE_BUTTON_X:
+            case KeyEvent.KEYCODE_BUTTON_Y:
+            case KeyEvent.KEYCODE_BUTTON_L1:
+            case KeyEvent.KEYCODE_A: // DEBUG
+            case KeyEvent.KEYCODE_B: // DEBUG
+            case KeyEvent.KEYCODE_X: // DEBUG
+            case KeyEvent.KEYCODE_Y: // DEBUG
+            case KeyEvent.KEYCODE_L: // DEBUG
+                mKeyRepeater.stop(debugKeyCodeToButton(keyCode));
+                return true;
+
             case KeyEvent.KEYCODE_DPAD_UP:   // DEBUG
             case KeyEvent.KEYCODE_DPAD_DOWN: // DEBUG
                 debugVars.dpadUpDown = 0;
@@ -492,8 +828,19 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
 
             case KeyEvent.KEYCODE_BUTTON_L2:
             case KeyEvent.KEYCODE_2:   // DEBUG
-                mShift = false;
-                setupView();
+                mEngine.setShift(false);
+                return true;
+
+            case KeyEvent.KEYCODE_BUTTON_THUMBL:
+                // Handled on key down
+                return true;
+
+            case KeyEvent.KEYCODE_BUTTON_R2:
+                finishGesture(event.getEventTime());
+                return true;
+
+            case KeyEvent.KEYCODE_BUTTON_THUMBR:
+                setWordJumps(false);
                 return true;
 
             case KeyEvent.KEYCODE_BUTTON_SELECT:
@@ -515,6 +862,15 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
             return true;
         }
 
+        if (DEBUG && (keyCode == KeyEvent.KEYCODE_7
+                || keyCode == KeyEvent.KEYCODE_8
+                || keyCode == KeyEvent.KEYCODE_9
+                || keyCode == KeyEvent.KEYCODE_0)) {
+            // The engine only acts on hat changes, so it has to see the release too
+            mEngine.updateHat(debugVars.hatX, debugVars.hatY);
+            return true;
+        }
+
         return false;
     }
 
@@ -526,24 +882,96 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
         }
     }
 
-    private void highlightStickPosition() {
-        String kbType = mSettingsPrefs.getString("keyboard_type", "full");
+    private void recordViewTime(long start) {
+        final long nanos = System.nanoTime() - start;
+        mLatencyStats.record(LatencyStats.VIEW, nanos);
+        mViewNanos += nanos;
+    }
+
+    /**
+     * Records the time since start as the engine's, without the view updates it triggered
+     */
+    private void recordEngineTime(long start, long viewNanosBefore) {
+        mLatencyStats.record(LatencyStats.ENGINE, System.nanoTime() - start - (mViewNanos - viewNanosBefore));
+    }
+
+    private final Runnable mLatencyOverlayRefresh = new Runnable() {
+        @Override
+        public void run() {
+            updateLatencyOverlay();
+        }
+    };
+
+    /**
+     * Shows the latency summary over the floating keyboard while the setting is on
+     */
+    private void updateLatencyOverlay() {
+        handler.removeCallbacks(mLatencyOverlayRefresh);
+        if (mLatencyOverlay == null) return;
+
+        boolean show = mSettings.latencyOverlay && usingFloatingKeyboard();
+        mLatencyOverlay.setVisibility(show ? View.VISIBLE : View.GONE);
+        if (show) {
+            mLatencyStats.summarize(mLatencySummary);
+            mLatencyOverlay.setText(mLatencySummary);
+            handler.postDelayed(mLatencyOverlayRefresh, LATENCY_OVERLAY_REFRESH_MS);
+        }
+    }
 
-        for (int i = 0; i < 9; i++) {
-            View circle = mView.findViewById(getResources().getIdentifier("diamond_" + i, "id", getPackageName()));
-            if (kbType.equals("full")) {
-                circle.setBackgroundResource(mStickPosition == i ? R.drawable.circle_selected : R.drawable.circle);
-                circle.setVisibility(View.VISIBLE);
-            } else if (kbType.equals("minimal")) {
-                circle.setVisibility(mStickPosition == i ? View.VISIBLE : View.GONE);
-                circle.setBackgroundResource(R.drawable.circle);
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter fout, String[] args) {
+        super.dump(fd, fout, args);
+        if (args != null && Arrays.asList(args).contains("reset")) {
+            mLatencyStats.reset();
+            fout.println("Input latency reset");
+        } else if (args != null && args.length > 0 && (args[0].equals("calibrate") || args[0].equals("profile"))) {
+            dumpProfileCommand(fout, args);
+        } else if (args != null && args.length > 0 && args[0].equals("trace")) {
+            InputTracer.dump(fout);
+        } else {
+            mLatencyStats.dump(fout);
+            mOutput.dumpMirror(fout);
+            mCalibrations.dump(fout);
+        }
+    }
+
+    /**
+     * Changes the profile of the last controller used:
+     * <pre>
+     * adb shell dumpsys activity service com.kalgon.gamepadkeyboard/.GamepadKeyboardService calibrate
+     * adb shell dumpsys activity service com.kalgon.gamepadkeyboard/.GamepadKeyboardService profile deadzone=0.1 right_axes=rx_ry
+     * </pre>
+     * calibrate takes where the sticks are now as their center, so leave them alone.
+     */
+    private void dumpProfileCommand(PrintWriter fout, final String[] args) {
+        // dump() runs on a binder thread, the calibrations belong to the main thread
+        FutureTask<ControllerProfile> task = new FutureTask<>(new Callable<ControllerProfile>() {
+            @Override
+            public ControllerProfile call() {
+                if (args[0].equals("calibrate")) return mCalibrations.calibrateLastCenters();
+                return mCalibrations.updateLastProfile(TextUtils.join(" ", Arrays.copyOfRange(args, 1, args.length)));
             }
+        });
+        handler.post(task);
+        try {
+            ControllerProfile profile = task.get(1, TimeUnit.SECONDS);
+            fout.println(profile == null ? "Use the controller first" : "New profile: " + profile);
+        } catch (ExecutionException e) {
+            fout.println("Bad profile: " + e.getCause().getMessage());
+        } catch (InterruptedException | TimeoutException e) {
+            fout.println("The keyboard didn't respond: " + e);
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (mDiamondViews != null) mDiamondViews.trimMemory(level);
+    }
+
     @Override
     public void onConfigurationChanged(Configuration newConfig) {
-        Log.d("GamepadKeyboard", "onConfigurationChanged");
+        InputTracer.event(InputTracer.CONFIGURATION_CHANGED);
         clearViewParent();
         super.onConfigurationChanged(newConfig);
     }
@@ -555,200 +983,270 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
         if (mUsingGamepad &&
                 (event.getSource() & InputDevice.SOURCE_JOYSTICK) == InputDevice.SOURCE_JOYSTICK
                 && event.getAction() == MotionEvent.ACTION_MOVE) {
-
-//            // Process all historical movement samples in the batch
-//            final int historySize = event.getHistorySize();
-//
-//            // Process the movements starting from the
-//            // earliest historical position in the batch
-//            for (int i = 0; i < historySize; i++) {
-//                // Process the event at historical position i
-//                processJoystickInput(event, i);
-//            }
+            mLatencyStats.recordSince(LatencyStats.DISPATCH, event.getEventTime());
+            final long start = System.nanoTime();
+            final long viewNanosBefore = mViewNanos;
+
+            // Process all historical movement samples in the batch
+            final int historySize = event.getHistorySize();
+            mJoystickBatch.reset(historySize + 1);
+
+            ControllerCalibrations.Calibration calibration = mCalibrations.get(event);
+            if (calibration == null) return super.onGenericMotionEvent(event);
+
+            // Process the movements starting from the
+            // earliest historical position in the batch
+            for (int i = 0; i < historySize; i++) {
+                // Process the event at historical position i
+                calibration.addSample(event, i, mJoystickBatch);
+            }
 
             // Process the current movement sample in the batch (position -1)
-            processJoystickInput(event, -1);
+            calibration.addSample(event, -1, mJoystickBatch);
+
+            if (mRecorder != null) mRecorder.motion(event.getEventTime(), mJoystickBatch);
+
+            InputTracer.event(InputTracer.MOTION, historySize + 1);
+            InputTracer.begin(InputTracer.QUANTIZE);
+            mEngine.processJoystickBatch(mJoystickBatch);
+            InputTracer.end();
+            recordEngineTime(start, viewNanosBefore);
             return true;
         }
 
         return super.onGenericMotionEvent(event);
     }
 
-    private float getCenteredAxis(MotionEvent event,
-                                  InputDevice device, int axis, int historyPos) {
-        final InputDevice.MotionRange range =
-                device.getMotionRange(axis, event.getSource());
-
-        // A joystick at rest does not always report an absolute position of
-        // (0,0). Use the getFlat() method to determine the range of values
-        // bounding the joystick axis center.
-        if (range != null) {
-            final float flat = range.getFlat();
-            final float value =
-                    historyPos < 0 ? event.getAxisValue(axis) :
-                            event.getHistoricalAxisValue(axis, historyPos);
-
-            // Ignore axis values that are within the 'flat' region of the
-            // joystick axis center.
-            if (Math.abs(value) > flat) {
-                return value;
-            }
-        }
-        return 0;
-    }
-
-    private void processJoystickInput(MotionEvent event, int historyPos) {
-
-        InputDevice inputDevice = event.getDevice();
-
-        float x = getCenteredAxis(event, inputDevice, MotionEvent.AXIS_X, historyPos);
-        float y = getCenteredAxis(event, inputDevice, MotionEvent.AXIS_Y, historyPos);
-        updateStickPosition(x, y);
-
-        // Check the DPAD (hat)
-        float hatX = getCenteredAxis(event, inputDevice, MotionEvent.AXIS_HAT_X, historyPos);
-        float hatY = getCenteredAxis(event, inputDevice, MotionEvent.AXIS_HAT_Y, historyPos);
-        updateHat(hatX, hatY);
-
-
-        float rx = getCenteredAxis(event, inputDevice, MotionEvent.AXIS_Z, historyPos);
-        float ry = getCenteredAxis(event, inputDevice, MotionEvent.AXIS_RZ, historyPos);
-        updateRightStickPosition(rx, ry);
+    @Override
+    public void onStickPositionChanged(int stickPosition) {
+        InputTracer.event(InputTracer.STICK, stickPosition);
+        if (mBlindFeedback != null) mBlindFeedback.onStickPosition(stickPosition);
+        mRenderer.invalidate(RenderScheduler.STICK);
     }
 
-    private void updateHat(float hatX, float hatY) {
-        if (hatY == -1.0f) {
-            toggleSymbols(false);
-        } else if (hatX == 1.0f) {
-            nextKeyboard();
-        } else if (hatX == -1.0f) {
-            prevKeyboard();
+    @Override
+    public void onKeyMapChanged(KeyMap keyMap, boolean shift) {
+        InputTracer.event(InputTracer.KEYMAP, shift ? 1 : 0);
+        // Shift alone changes nothing but the labels, and comes with every capital letter
+        if (keyMap != mPredictedKeyMap) {
+            mPredictedKeyMap = keyMap;
+            selectCompletionLanguage(keyMap);
+            updatePredictions();
+            if (mBlindFeedback != null && mUsingGamepad) mBlindFeedback.onLayout(layoutIndex(keyMap));
         }
+        mRenderer.invalidate(RenderScheduler.LABELS);
     }
 
-    private void nextKeyboard() {
-        mKeyboardIndex++;
-        if (mKeyboardIndex >= mKeyboards.size()) mKeyboardIndex = 0;
-        if (!mSymbolsShown) {
-            mCurrentKeyboard = mKeyboards.get(mKeyboardIndex);
-            setupView();
+    /**
+     * @return The index of a language's keymap in the current set, or -1 for the symbols
+     */
+    private int layoutIndex(KeyMap keyMap) {
+        KeyboardSet keyboards = mEngine.getKeyboards();
+        for (int i = 0; i < keyboards.size(); i++) {
+            if (keyboards.get(i) == keyMap) return i;
         }
+        return -1;
     }
 
-    private void prevKeyboard() {
-        mKeyboardIndex--;
-        if (mKeyboardIndex < 0) mKeyboardIndex = mKeyboards.size() - 1;
-        if (!mSymbolsShown) {
-            mCurrentKeyboard = mKeyboards.get(mKeyboardIndex);
-            setupView();
+    @Override
+    public void onCursorDirectionChanged(int direction, int keyCode) {
+        InputTracer.event(InputTracer.CURSOR, keyCode);
+        mCursorRepeater.stop();
+        mAnalogCursor.stop();
+        if (keyCode == 0) return;
+
+        // Sideways moves through setSelection, and so do line jumps. Up and down need the
+        // editor's layout, so they stay DPAD keys, as does everything in editors that don't
+        // report their selection.
+        boolean horizontal = keyCode == KeyEvent.KEYCODE_DPAD_LEFT || keyCode == KeyEvent.KEYCODE_DPAD_RIGHT;
+        int sign = keyCode == KeyEvent.KEYCODE_DPAD_RIGHT || keyCode == KeyEvent.KEYCODE_DPAD_DOWN ? 1 : -1;
+        boolean moved = horizontal ? mAnalogCursor.start(sign, mSettings.deadzone)
+                : mWordJumps && mAnalogCursor.jumpLine(sign);
+        if (moved) {
+            // We don't know which word the cursor lands in
+            mCompleter.reset();
+            updatePredictions();
+            return;
         }
-    }
 
-    private void toggleSymbols(boolean force) {
-        if (mSymbolsShown && !force) {
-            mCurrentKeyboard = mKeyboards.get(mKeyboardIndex);
-        } else {
-            mCurrentKeyboard = mSymbols;
-        }
-        mSymbolsShown = mCurrentKeyboard == mSymbols;
-        setupView();
+        mCursorRepeater.start(keyCode);
     }
 
-    private void updateStickPosition(float x, float y) {
-
-        double omega = Math.atan2(x, y) / Math.PI * 180;
+    private void setWordJumps(boolean wordJumps) {
+        mWordJumps = wordJumps;
+        mAnalogCursor.setWordJumps(wordJumps);
+    }
 
-        // We're looking for a 45 degree slice for each of the main 8 directions
-        int newStickPos = -1;
-        if (x == 0 && y == 0) newStickPos = 0;
-        else if (omega > 158 || omega <= -158) newStickPos = 1;
-        else if (omega <= 158 && omega > 113) newStickPos = 2;
-        else if (omega <= 113 && omega > 68) newStickPos = 3;
-        else if (omega <= 68 && omega > 23) newStickPos = 4;
-        else if (omega <= 23 && omega > -22) newStickPos = 5;
-        else if (omega <= -22 && omega > -67) newStickPos = 6;
-        else if (omega <= -67 && omega > -112) newStickPos = 7;
-        else if (omega <= -112 && omega > -158) newStickPos = 8;
+    @Override
+    public void onRepeat(int keyCode, int repeatCount) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_BUTTON_A:
+            case KeyEvent.KEYCODE_BUTTON_B:
+            case KeyEvent.KEYCODE_BUTTON_X:
+            case KeyEvent.KEYCODE_BUTTON_Y:
+                // Uses the current stick position, so moving the stick while holding changes the letter
+                final long start = System.nanoTime();
+                final long viewNanosBefore = mViewNanos;
+                String key = mEngine.pressButton(keyCode);
+                if (key != null) {
+                    mOutput.commitText(key);
+                    mCompleter.append(key);
+                    updatePredictions();
+                }
+                recordEngineTime(start, viewNanosBefore);
+                break;
 
-//        Log.d("processJoystickInput", String.format("x = %f, y = %f, omega = %f, newStickPos = %d", x, y, omega, newStickPos));
+            case KeyEvent.KEYCODE_BUTTON_L1:
+                mOutput.deleteBackward();
+                mCompleter.deleteBackward();
+                updatePredictions();
+                break;
 
-        if (newStickPos != mStickPosition) {
-            mStickPosition = newStickPos;
-            highlightStickPosition();
+            default:
+                // The right stick's DPAD keys. We don't know which word the cursor lands in.
+                mOutput.sendKey(keyCode);
+                mCompleter.reset();
+                updatePredictions();
         }
     }
 
-    private void updateRightStickPosition(float x, float y) {
-        double omega = Math.atan2(x, y) / Math.PI * 180;
-
-        // We're looking for specific up-down-left-right, so we're ignoring diagonals
-        // Keeping the numbering 0, 1, 3, 5, 7 for consistency with the left stick directions
-        int newDirection = -1;
-        if (x == 0 && y == 0) newDirection = 0;
-        else if (omega > 135 || omega <= -135) newDirection = 1;
-        else if (omega > 45 && omega <= 135) newDirection = 3;
-        else if (omega > -45 && omega <= 45) newDirection = 5;
-        else if (omega > -135 && omega <= -45) newDirection = 7;
-
-        if (newDirection != mRightStickPosition) {
-            keyDownUpStop();
-            mRightStickPosition = newDirection;
+    /**
+     * Types the word the stick's path spelled since R2 was pressed, and offers the next best
+     * words as candidates. Enter if the stick didn't move, or if there's nothing to decode
+     * the path with.
+     */
+    private void finishGesture(long eventTime) {
+        if (!mEngine.isGesturing()) return;
+        GesturePath path = mEngine.finishGesture(eventTime);
+
+        // The words are on the language's keymap, the symbols spell nothing
+        KeyMap keyboard = mEngine.getCurrentKeyboard();
+        boolean onLanguage = keyboard != null && keyboard.getName().equals(mCompletionLanguage);
+        if (path.isTap() || mGestureDecoder == null || !onLanguage || !mCompletionAllowed) {
+            mOutput.enter();
+            mCompleter.append("\n");
+            updatePredictions();
+            return;
+        }
 
-            switch (mRightStickPosition) {
-                case 1:
-                    keyDownUpRepeat(KeyEvent.KEYCODE_DPAD_UP);
-                    break;
-                case 3:
-                    keyDownUpRepeat(KeyEvent.KEYCODE_DPAD_RIGHT);
-                    break;
-                case 5:
-                    keyDownUpRepeat(KeyEvent.KEYCODE_DPAD_DOWN);
-                    break;
-                case 7:
-                    keyDownUpRepeat(KeyEvent.KEYCODE_DPAD_LEFT);
-                    break;
+        final long start = System.nanoTime();
+        InputTracer.begin(InputTracer.DECODE);
+        int count = mGestureDecoder.decode(path, mCandidates);
+        InputTracer.end();
+        mLatencyStats.record(LatencyStats.ENGINE, System.nanoTime() - start);
+        InputTracer.event(InputTracer.GESTURE, path.size(), count);
+        if (count == 0) return;
+
+        if (mEngine.isShift()) {
+            for (int i = 0; i < count; i++) {
+                mCandidates[i] = mCandidates[i].substring(0, 1).toUpperCase(Locale.ROOT) + mCandidates[i].substring(1);
             }
         }
+        // A gesture is a word of its own
+        if (mCompleter.getWord().length() > 0) {
+            mOutput.space();
+            mCompleter.append(" ");
+        }
+        String word = mCandidates[0];
+        mOutput.markInput(eventTime);
+        mOutput.commitText(word);
+        mCompleter.append(word);
+
+        // Keeps the gesture's words as the candidates, instead of the word's completions
+        mGestureWord = word;
+        mCandidateCount = count;
+        mSelectedCandidate = 0;
+        mLetterHints = 0;
+        mRenderer.invalidate(RenderScheduler.CANDIDATES);
+    }
 
+    @Override
+    public void onAcceptCandidate() {
+        if (mCandidateCount == 0) return;
+
+        if (mGestureWord != null) {
+            // Replaces the word the gesture typed, and finishes it
+            String candidate = mCandidates[mSelectedCandidate] + " ";
+            for (int i = mGestureWord.codePointCount(0, mGestureWord.length()); i > 0; i--) {
+                mOutput.deleteBackward();
+                mCompleter.deleteBackward();
+            }
+            mOutput.commitText(candidate);
+            mCompleter.append(candidate);
+            updatePredictions();
+            return;
+        }
 
+        // The candidate starts with the word as typed, so only the rest is missing
+        String candidate = mCandidates[mSelectedCandidate];
+        String completion = candidate.substring(mCompleter.getWord().length()) + " ";
+        mOutput.commitText(completion);
+        // Finishing the word through the completer also learns it
+        mCompleter.append(completion);
+        updatePredictions();
     }
 
     /**
-     * Helper to send a key down / key up pair to the current editor.
+     * Follows the keymap's language, so completions match what's being typed. The
+     * symbols have no words, so they keep the language they were switched from.
      */
-    private void keyDown(int keyEventCode) {
-        getCurrentInputConnection().sendKeyEvent(
-                new KeyEvent(KeyEvent.ACTION_DOWN, keyEventCode));
-    }
-
-    private void keyDownUpRepeat(int keyEventCode) {
-        mKeyRepeat = keyEventCode;
-        keyDownUp(keyEventCode);
-
-        handler.postDelayed(new Runnable() {
+    private void selectCompletionLanguage(KeyMap keyMap) {
+        final String language = keyMap.getName();
+        if (language.equals(KeyMapLoader.SYMBOLS) || language.equals(mCompletionLanguage)) return;
+
+        mCompletionLanguage = language;
+        mLetterModel = null;
+        mGestureDecoder = null;
+        DictionaryRepository.get(this).requestLanguage(keyMap, new DictionaryRepository.Callback() {
             @Override
-            public void run() {
-                if (mKeyRepeat == keyEventCode) {
-                    keyDownUp(keyEventCode);
-                    handler.postDelayed(this, KEY_REPEAT_MS);
-                }
+            public void onLanguageLoaded(DictionaryRepository.Language loaded) {
+                // Another language may have been selected while this one loaded
+                if (!loaded.name.equals(mCompletionLanguage)) return;
+                mCompleter.setLanguage(loaded.dictionary, loaded.learnedWords);
+                mLetterModel = loaded.letterModel;
+                mGestureDecoder = loaded.gestureDecoder;
+                updatePredictions();
             }
-        }, KEY_REPEAT_MS);
-
+        });
     }
 
-    private void keyDownUpStop() {
-        mKeyRepeat = 0;
+    /**
+     * Refreshes the word completions and the next letter hints after the word changed
+     */
+    private void updatePredictions() {
+        mGestureWord = null;
+        mCandidateCount = mSettings.wordCompletion && mCompletionAllowed ? mCompleter.complete(mCandidates) : 0;
+        mSelectedCandidate = 0;
+
+        // The hints are positions on the language's keymap, they mean nothing on the symbols
+        KeyMap keyboard = mEngine.getCurrentKeyboard();
+        boolean onLanguage = keyboard != null && keyboard.getName().equals(mCompletionLanguage);
+        mLetterHints = mSettings.letterHints && mLetterModel != null && onLanguage ?
+                mLetterModel.predict(mCompleter.getWord()) : 0;
+        mRenderer.invalidate(RenderScheduler.CANDIDATES);
     }
 
-    private void keyUp(int keyEventCode) {
-        getCurrentInputConnection().sendKeyEvent(
-                new KeyEvent(KeyEvent.ACTION_UP, keyEventCode));
+    private static boolean allowsCompletion(EditorInfo attribute) {
+        if ((attribute.inputType & InputType.TYPE_MASK_CLASS) != InputType.TYPE_CLASS_TEXT) return false;
+        if ((attribute.inputType & InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS) != 0) return false;
+
+        switch (attribute.inputType & InputType.TYPE_MASK_VARIATION) {
+            case InputType.TYPE_TEXT_VARIATION_PASSWORD:
+            case InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD:
+            case InputType.TYPE_TEXT_VARIATION_WEB_PASSWORD:
+            case InputType.TYPE_TEXT_VARIATION_URI:
+            case InputType.TYPE_TEXT_VARIATION_EMAIL_ADDRESS:
+            case InputType.TYPE_TEXT_VARIATION_WEB_EMAIL_ADDRESS:
+                return false;
+        }
+        return true;
     }
 
-    private void keyDownUp(int keyEventCode) {
-        keyDown(keyEventCode);
-        keyUp(keyEventCode);
+    @Override
+    public void onUpdateSelection(int oldSelStart, int oldSelEnd, int newSelStart, int newSelEnd,
+                                  int candidatesStart, int candidatesEnd) {
+        super.onUpdateSelection(oldSelStart, oldSelEnd, newSelStart, newSelEnd, candidatesStart, candidatesEnd);
+        mOutput.updateSelection(newSelStart, newSelEnd);
     }
 
     @Override
@@ -762,24 +1260,25 @@ public class GamepadKeyboardService extends InputMethodService implements View.O
         switch (event.getAction() & MotionEvent.ACTION_MASK) {
 
             case MotionEvent.ACTION_DOWN:
-                WindowManager.LayoutParams lParams = (WindowManager.LayoutParams) view.getLayoutParams();
-                mViewDeltaX = lParams.x + X;
-                mViewDeltaY = lParams.y + Y;
+                // The window may not have caught up with mViewX yet, but it will
+                mViewDeltaX = mViewX + X;
+                mViewDeltaY = mViewY + Y;
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                saveViewPosition();
                 break;
-//            case MotionEvent.ACTION_UP:
-//                break;
 //            case MotionEvent.ACTION_POINTER_DOWN:
 //                break;
 //            case MotionEvent.ACTION_POINTER_UP:
 //                break;
             case MotionEvent.ACTION_MOVE:
-                WindowManager.LayoutParams layoutParams = (WindowManager.LayoutParams) view.getLayoutParams();
-                mViewX = layoutParams.x = mViewDeltaX - X;
-                mViewY = layoutParams.y = mViewDeltaY - Y;
-                mWindowManager.updateViewLayout(view, layoutParams);
+                // Moved at the next frame, however many moves come before it
+                mViewX = mViewDeltaX - X;
+                mViewY = mViewDeltaY - Y;
+                mRenderer.invalidate(RenderScheduler.WINDOW);
                 break;
         }
-        mView.invalidate();
         return true;
 
     }
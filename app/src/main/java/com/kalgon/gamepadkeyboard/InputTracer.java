@@ -0,0 +1,120 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.os.Trace;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Debug tracing of the input path without formatting strings or writing to logd per event.
+ * Events are stored as a type and two ints into a preallocated ring buffer, dumped on demand:
+ * <pre>
+ * adb shell dumpsys activity service com.kalgon.gamepadkeyboard/.GamepadKeyboardService trace
+ * </pre>
+ * The quantize, render, commit and gesture decoding stages are also marked as
+ * android.os.Trace sections, for systrace and Perfetto.
+ * <p>
+ * Everything is gated on BuildConfig.DEBUG, a constant false in release builds, so javac
+ * drops the calls and the buffer is never allocated. Only record from the main thread.
+ */
+public final class InputTracer {
+
+    public static final boolean ENABLED = BuildConfig.DEBUG;
+
+    // Event types, with what their two arguments are
+    public static final int KEY_DOWN = 0;          // key code, repeat count
+    public static final int KEY_UP = 1;            // key code
+    public static final int MOTION = 2;            // samples in the batch
+    public static final int STICK = 3;             // stick position
+    public static final int KEYMAP = 4;            // shift
+    public static final int CURSOR = 5;            // DPAD key code, 0 when released
+    public static final int COMMIT = 6;            // characters, 1 if a batch edit was closed
+    public static final int START_INPUT = 7;       // input type, restarting
+    public static final int START_INPUT_VIEW = 8;  // restarting
+    public static final int FINISH_INPUT = 9;
+    public static final int FINISH_INPUT_VIEW = 10;
+    public static final int CREATE_INPUT_VIEW = 11;
+    public static final int SETUP_VIEW = 12;
+    public static final int WINDOW_ADDED = 13;     // x, y
+    public static final int WINDOW_REMOVED = 14;   // x, y
+    public static final int SETTINGS_CHANGED = 15;
+    public static final int CONFIGURATION_CHANGED = 16;
+    public static final int GESTURE = 17;          // path segments, words found
+
+    private static final String[] EVENT_NAMES = {
+            "key-down", "key-up", "motion", "stick", "keymap", "cursor", "commit",
+            "start-input", "start-input-view", "finish-input", "finish-input-view",
+            "create-input-view", "setup-view", "window-added", "window-removed",
+            "settings-changed", "configuration-changed", "gesture"};
+
+    // Trace section names
+    public static final String QUANTIZE = "GamepadKeyboard:quantize";
+    public static final String RENDER = "GamepadKeyboard:render";
+    public static final String COMMIT_SECTION = "GamepadKeyboard:commit";
+    public static final String DECODE = "GamepadKeyboard:decode";
+
+    // A power of two, so the index wraps with a mask
+    private static final int CAPACITY = 4096;
+
+    private static final long[] sTimes = ENABLED ? new long[CAPACITY] : null;
+    private static final int[] sTypes = ENABLED ? new int[CAPACITY] : null;
+    private static final int[] sArgs0 = ENABLED ? new int[CAPACITY] : null;
+    private static final int[] sArgs1 = ENABLED ? new int[CAPACITY] : null;
+    // Events recorded so far. Read from dump() on a binder thread.
+    private static volatile int sCount = 0;
+
+    private InputTracer() {
+    }
+
+    public static void event(int type) {
+        event(type, 0, 0);
+    }
+
+    public static void event(int type, int arg0) {
+        event(type, arg0, 0);
+    }
+
+    public static void event(int type, int arg0, int arg1) {
+        if (!ENABLED) return;
+        int count = sCount;
+        int i = count & (CAPACITY - 1);
+        sTimes[i] = System.nanoTime();
+        sTypes[i] = type;
+        sArgs0[i] = arg0;
+        sArgs1[i] = arg1;
+        sCount = count + 1;
+    }
+
+    /**
+     * Starts a trace section, which must be ended on the same thread
+     */
+    public static void begin(String section) {
+        if (ENABLED) Trace.beginSection(section);
+    }
+
+    public static void end() {
+        if (ENABLED) Trace.endSection();
+    }
+
+    /**
+     * Prints the buffered events, oldest first, with their time before the dump. The
+     * main thread keeps recording meanwhile, so the oldest few may already be overwritten.
+     */
+    public static void dump(PrintWriter out) {
+        if (!ENABLED) {
+            out.println("Input tracing is only in debug builds");
+            return;
+        }
+        final long now = System.nanoTime();
+        final int count = sCount;
+        final int first = Math.max(0, count - CAPACITY);
+        out.println(String.format(Locale.ROOT, "Input trace, the last %d of %d events (ms ago):", count - first, count));
+        for (int n = first; n < count; n++) {
+            int i = n & (CAPACITY - 1);
+            int type = sTypes[i];
+            String name = type >= 0 && type < EVENT_NAMES.length ? EVENT_NAMES[type] : Integer.toString(type);
+            out.println(String.format(Locale.ROOT, "  %10.3f %-22s %d %d",
+                    (now - sTimes[i]) / 1e6, name, sArgs0[i], sArgs1[i]));
+        }
+    }
+}
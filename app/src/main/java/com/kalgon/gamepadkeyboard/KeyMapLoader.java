@@ -0,0 +1,42 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.content.Context;
+
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+import com.kalgon.gamepadkeyboard.engine.KeyMapFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads a keymap compiled at build time (see {@link KeyMapRegistry}) from the assets
+ */
+public class KeyMapLoader {
+
+    public static final String SYMBOLS = "symbols";
+
+    private KeyMapLoader() {
+    }
+
+    public static KeyMap load(Context context, String name) throws IOException {
+        String assetPath = KeyMapRegistry.assetPath(name);
+        if (assetPath == null) {
+            throw new IOException("No such keymap: " + name);
+        }
+
+        try (InputStream in = context.getAssets().open(assetPath)) {
+            return KeyMapFormat.read(name, readFully(in));
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 256));
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,112 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+import com.kalgon.gamepadkeyboard.engine.KeyboardSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads keymaps on a background thread into a cache shared by the whole process,
+ * and builds the {@link KeyboardSet}s from it. Changing languages only loads the
+ * keymaps that aren't cached yet.
+ */
+public class KeyMapRepository {
+
+    /**
+     * Called on the main thread with a set that is ready to use
+     */
+    public interface Callback {
+        void onKeyboardsLoaded(KeyboardSet keyboards);
+    }
+
+    // All the keymaps we ship fit, with room for a few more
+    private static final int MAX_CACHED_KEYMAPS = 8;
+
+    private static KeyMapRepository sInstance = null;
+
+    private final Context mContext;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Least recently used first. Only touched by the loader thread.
+    private final Map<String, KeyMap> mCache = new LinkedHashMap<String, KeyMap>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, KeyMap> eldest) {
+            return size() > MAX_CACHED_KEYMAPS;
+        }
+    };
+
+    // Only the latest request gets published
+    private int mGeneration = 0;
+
+    private KeyMapRepository(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public static synchronized KeyMapRepository get(Context context) {
+        if (sInstance == null) {
+            sInstance = new KeyMapRepository(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Loads the given languages and the symbols in the background. Must be called on the
+     * main thread. The callback isn't called if a newer request was made in the meantime.
+     */
+    public void requestKeyboards(final Set<String> languages, final Callback callback) {
+        final int generation = ++mGeneration;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final KeyboardSet keyboards = buildKeyboardSet(languages);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            callback.onKeyboardsLoaded(keyboards);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private KeyboardSet buildKeyboardSet(Set<String> languages) {
+        // Keep the registry order, the preference set has none
+        List<KeyMap> keyboards = new ArrayList<>();
+        for (String name : KeyMapRegistry.NAMES) {
+            if (languages.contains(name)) {
+                KeyMap keyMap = getOrLoad(name);
+                if (keyMap != null) keyboards.add(keyMap);
+            }
+        }
+        return new KeyboardSet(keyboards, getOrLoad(KeyMapLoader.SYMBOLS));
+    }
+
+    private KeyMap getOrLoad(String name) {
+        KeyMap keyMap = mCache.get(name);
+        if (keyMap == null) {
+            try {
+                keyMap = KeyMapLoader.load(mContext, name);
+                mCache.put(name, keyMap);
+            } catch (IOException e) {
+                Log.e("KeyMapRepository", "Failed loading " + name + ": " + e);
+            }
+        }
+        return keyMap;
+    }
+}
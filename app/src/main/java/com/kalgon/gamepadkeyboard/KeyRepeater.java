@@ -0,0 +1,98 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.os.Handler;
+
+/**
+ * Repeats a held key: fires once when started, again after an initial delay, and then
+ * faster and faster down to a minimum interval. One key repeats at a time per repeater.
+ * <p>
+ * The repeater is its own single Runnable, so scheduling never allocates and stopping
+ * removes the pending callback instead of leaving it queued in the Handler.
+ */
+public class KeyRepeater implements Runnable {
+
+    public interface Callback {
+        /**
+         * @param repeatCount 0 for the initial press, then 1, 2, ... for the repeats
+         */
+        void onRepeat(int keyCode, int repeatCount);
+    }
+
+    public static final long DEFAULT_INITIAL_DELAY_MS = 400;
+    public static final long DEFAULT_START_INTERVAL_MS = 150;
+    public static final long DEFAULT_MIN_INTERVAL_MS = 40;
+    public static final float DEFAULT_ACCELERATION = 0.85f;
+
+    private final Handler mHandler;
+    private final Callback mCallback;
+
+    private long mInitialDelayMs = DEFAULT_INITIAL_DELAY_MS;
+    private long mStartIntervalMs = DEFAULT_START_INTERVAL_MS;
+    private long mMinIntervalMs = DEFAULT_MIN_INTERVAL_MS;
+    private float mAcceleration = DEFAULT_ACCELERATION;
+
+    private int mKeyCode = 0;
+    private int mRepeatCount = 0;
+    private long mIntervalMs = 0;
+
+    public KeyRepeater(Handler handler, Callback callback) {
+        mHandler = handler;
+        mCallback = callback;
+    }
+
+    /**
+     * @param acceleration Each interval is the previous one times this (at most 1)
+     */
+    public void setTiming(long initialDelayMs, long startIntervalMs, long minIntervalMs, float acceleration) {
+        mInitialDelayMs = initialDelayMs;
+        mStartIntervalMs = startIntervalMs;
+        mMinIntervalMs = Math.min(minIntervalMs, startIntervalMs);
+        mAcceleration = Math.min(acceleration, 1f);
+    }
+
+    /**
+     * Fires the key now and starts repeating it, replacing the key being repeated
+     */
+    public void start(int keyCode) {
+        mHandler.removeCallbacks(this);
+        mKeyCode = keyCode;
+        mRepeatCount = 0;
+        mIntervalMs = mStartIntervalMs;
+
+        mCallback.onRepeat(keyCode, 0);
+        // The callback may have stopped us
+        if (mKeyCode == keyCode) {
+            mHandler.postDelayed(this, mInitialDelayMs);
+        }
+    }
+
+    /**
+     * Stops repeating keyCode, if it's the key being repeated
+     */
+    public void stop(int keyCode) {
+        if (mKeyCode == keyCode) stop();
+    }
+
+    public void stop() {
+        mHandler.removeCallbacks(this);
+        mKeyCode = 0;
+    }
+
+    public boolean isRepeating(int keyCode) {
+        return mKeyCode == keyCode;
+    }
+
+    @Override
+    public void run() {
+        if (mKeyCode == 0) return;
+
+        final int keyCode = mKeyCode;
+        mRepeatCount++;
+        mCallback.onRepeat(keyCode, mRepeatCount);
+
+        if (mKeyCode == keyCode) {
+            mHandler.postDelayed(this, mIntervalMs);
+            mIntervalMs = Math.max(mMinIntervalMs, (long) (mIntervalMs * mAcceleration));
+        }
+    }
+}
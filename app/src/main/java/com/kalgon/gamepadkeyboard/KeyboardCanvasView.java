@@ -0,0 +1,213 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The 3x3 grid of stick positions, each a diamond of 4 buttons, drawn straight onto one
+ * canvas instead of 45 nested views. Paints are made once, and the labels of each keymap
+ * and shift state are measured and recorded into a Picture per position the first time
+ * they're shown. Switching keymaps or shift is then just picking other Pictures, and a
+ * frame is circles and recorded text.
+ * <p>
+ * The layers are kept for every keymap still in use, and dropped under memory pressure.
+ */
+public class KeyboardCanvasView extends View {
+
+    // Sizes in sp, as in the old diamond layout
+    private static final float CELL_SIZE = 68;
+    private static final float CIRCLE_SIZE = 28;
+    private static final float TEXT_SIZE = 20;
+    // Room left around a label that is too wide for its circle
+    private static final float LABEL_PADDING = 2;
+
+    // The circle of each button inside a cell, in sp, in the order of the keymap's button indexes
+    private static final float[] BUTTON_LEFT = {20, 38, 2, 20};
+    private static final float[] BUTTON_TOP = {38, 20, 20, 2};
+
+    // The grid column and row of each stick position: center, then clockwise from up
+    private static final int[] POSITION_COLUMN = {1, 1, 2, 2, 2, 1, 0, 0, 0};
+    private static final int[] POSITION_ROW = {1, 0, 0, 1, 2, 2, 2, 1, 0};
+
+    private static final int TYPE_FULL = 0;
+    private static final int TYPE_MINIMAL = 1;
+
+    private final float mScale;
+    private final float mCellSize;
+    private final float mRadius;
+
+    private final Paint mNeutralPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mSelectedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mHintPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    // The center of every circle, relative to the view
+    private final float[][] mCenterX = new float[KeyMap.STICK_POSITIONS][KeyMap.BUTTONS];
+    private final float[][] mCenterY = new float[KeyMap.STICK_POSITIONS][KeyMap.BUTTONS];
+
+    // The labels of each position, by keymap then shift state. Weak, so the keymaps of
+    // languages no longer loaded take their layers with them.
+    private final Map<KeyMap, Picture[][]> mLabelLayers = new WeakHashMap<>();
+    private KeyMap mKeyMap = null;
+    private boolean mShift = false;
+    private Picture[] mLabels = null;
+
+    private int mHighlighted = -1;
+    private int mHints = 0;
+    private int mType = TYPE_FULL;
+
+    public KeyboardCanvasView(Context context) {
+        this(context, null);
+    }
+
+    public KeyboardCanvasView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mScale = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 1, getResources().getDisplayMetrics());
+        mCellSize = CELL_SIZE * mScale;
+        mRadius = CIRCLE_SIZE * mScale / 2;
+
+        mNeutralPaint.setColor(context.getColor(R.color.colorNeutral));
+        mSelectedPaint.setColor(context.getColor(R.color.colorAccent));
+        mHintPaint.setColor(context.getColor(R.color.colorHint));
+        mTextPaint.setColor(0xFF000000);
+        mTextPaint.setTextAlign(Paint.Align.LEFT);
+
+        for (int i = 0; i < KeyMap.STICK_POSITIONS; i++) {
+            for (int b = 0; b < KeyMap.BUTTONS; b++) {
+                mCenterX[i][b] = POSITION_COLUMN[i] * mCellSize + BUTTON_LEFT[b] * mScale + mRadius;
+                mCenterY[i][b] = POSITION_ROW[i] * mCellSize + BUTTON_TOP[b] * mScale + mRadius;
+            }
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int size = (int) Math.ceil(3 * mCellSize);
+        setMeasuredDimension(resolveSize(size, widthMeasureSpec), resolveSize(size, heightMeasureSpec));
+    }
+
+    public void setLabels(KeyMap keyMap, boolean shift) {
+        if (keyMap == mKeyMap && shift == mShift) return;
+        mKeyMap = keyMap;
+        mShift = shift;
+
+        Picture[][] layers = mLabelLayers.get(keyMap);
+        if (layers == null) {
+            layers = new Picture[KeyMap.SHIFT_STATES][];
+            mLabelLayers.put(keyMap, layers);
+        }
+        int state = shift ? 1 : 0;
+        if (layers[state] == null) layers[state] = recordLabels(keyMap, shift);
+        mLabels = layers[state];
+        invalidate();
+    }
+
+    /**
+     * Measures and draws the labels of every position into its own Picture, so minimal
+     * mode can draw a single position
+     */
+    private Picture[] recordLabels(KeyMap keyMap, boolean shift) {
+        final int size = (int) Math.ceil(3 * mCellSize);
+        final float room = 2 * mRadius - 2 * LABEL_PADDING * mScale;
+        Picture[] labels = new Picture[KeyMap.STICK_POSITIONS];
+        for (int i = 0; i < KeyMap.STICK_POSITIONS; i++) {
+            Picture picture = new Picture();
+            Canvas canvas = picture.beginRecording(size, size);
+            for (int b = 0; b < KeyMap.BUTTONS; b++) {
+                // Fit the label in its circle, and center it there
+                String label = keyMap.getKey(i, b, shift);
+                mTextPaint.setTextSize(TEXT_SIZE * mScale);
+                float width = mTextPaint.measureText(label);
+                if (width > room) {
+                    mTextPaint.setTextSize(TEXT_SIZE * mScale * room / width);
+                    width = mTextPaint.measureText(label);
+                }
+                Paint.FontMetrics metrics = mTextPaint.getFontMetrics();
+                canvas.drawText(label, mCenterX[i][b] - width / 2,
+                        mCenterY[i][b] - (metrics.ascent + metrics.descent) / 2, mTextPaint);
+            }
+            picture.endRecording();
+            labels[i] = picture;
+        }
+        return labels;
+    }
+
+    /**
+     * Drops the label layers other than the shown one, as the memory pressure calls for
+     *
+     * @param level A ComponentCallbacks2.TRIM_MEMORY_* level
+     */
+    public void trimMemory(int level) {
+        // The keyboard hides all the time, that alone is no reason to record them again
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return;
+        }
+        mLabelLayers.clear();
+        if (mKeyMap != null) {
+            Picture[][] layers = new Picture[KeyMap.SHIFT_STATES][];
+            layers[mShift ? 1 : 0] = mLabels;
+            mLabelLayers.put(mKeyMap, layers);
+        }
+    }
+
+    /**
+     * @param hints Bit n set for each position n to hint at
+     */
+    public void setHints(int hints) {
+        if (hints == mHints) return;
+        mHints = hints;
+        // Minimal only shows the highlighted position, which is never drawn as a hint
+        if (mType == TYPE_FULL) invalidate();
+    }
+
+    /**
+     * @param keyboardType The keyboard_type setting, "full" or "minimal"
+     */
+    public void highlight(int stickPosition, String keyboardType) {
+        int type = keyboardType.equals("minimal") ? TYPE_MINIMAL : TYPE_FULL;
+        if (stickPosition == mHighlighted && type == mType) return;
+        mHighlighted = stickPosition;
+        mType = type;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mLabels == null) return;
+        if (mType == TYPE_MINIMAL) {
+            // Only the highlighted position, in plain colors, keeping its place in the grid
+            if (mHighlighted >= 0) drawPosition(canvas, mHighlighted, mNeutralPaint);
+            return;
+        }
+        for (int i = 0; i < KeyMap.STICK_POSITIONS; i++) {
+            Paint paint;
+            if (i == mHighlighted) {
+                paint = mSelectedPaint;
+            } else {
+                paint = (mHints & (1 << i)) != 0 ? mHintPaint : mNeutralPaint;
+            }
+            drawPosition(canvas, i, paint);
+        }
+    }
+
+    private void drawPosition(Canvas canvas, int position, Paint circlePaint) {
+        for (int b = 0; b < KeyMap.BUTTONS; b++) {
+            float x = mCenterX[position][b];
+            float y = mCenterY[position][b];
+            canvas.drawCircle(x, y, mRadius, circlePaint);
+        }
+        canvas.drawPicture(mLabels[position]);
+    }
+}
@@ -0,0 +1,114 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.provider.Settings;
+
+import com.kalgon.gamepadkeyboard.engine.StickQuantizer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable, validated snapshot of the settings the service acts on. It is read once
+ * when a preference or the overlay permission changes, and the event path only reads
+ * its fields, never SharedPreferences or the system settings.
+ */
+public final class KeyboardSettings {
+
+    public static final String TYPE_FULL = "full";
+    public static final String TYPE_MINIMAL = "minimal";
+    public static final String TYPE_BLIND = "blind";
+
+    // The seek bars keep the deadzone in percent and the repeat timing in milliseconds
+    private static final int MIN_DEADZONE_PERCENT = 5;
+    private static final int MAX_DEADZONE_PERCENT = 50;
+    private static final int MIN_REPEAT_DELAY_MS = 100;
+    private static final int MAX_REPEAT_DELAY_MS = 1000;
+    private static final int MIN_REPEAT_INTERVAL_MS = 20;
+    private static final int MAX_REPEAT_INTERVAL_MS = (int) KeyRepeater.DEFAULT_START_INTERVAL_MS;
+
+    public final boolean drawOnTop;
+    // Whether the user granted drawing over other apps, checked when the snapshot is made
+    public final boolean canDrawOverlays;
+    // One of TYPE_FULL, TYPE_MINIMAL and TYPE_BLIND
+    public final String keyboardType;
+    public final boolean blind;
+    // Vibrates along with the blind keyboard's earcons
+    public final boolean blindVibration;
+    // Shown over the other apps rather than at the bottom of the screen
+    public final boolean floating;
+    public final Set<String> languages;
+
+    public final boolean wordCompletion;
+    public final boolean letterHints;
+
+    // How far the left stick moves before it leaves the center, between 0 and 1
+    public final float deadzone;
+    public final long repeatDelayMs;
+    public final long repeatIntervalMs;
+
+    public final boolean latencyOverlay;
+    public final boolean recordInput;
+
+    private KeyboardSettings(Context context, SharedPreferences prefs) {
+        drawOnTop = prefs.getBoolean("draw_on_top", true);
+        canDrawOverlays = Settings.canDrawOverlays(context);
+
+        String type = prefs.getString("keyboard_type", TYPE_FULL);
+        keyboardType = TYPE_MINIMAL.equals(type) || TYPE_BLIND.equals(type) ? type : TYPE_FULL;
+        blind = keyboardType.equals(TYPE_BLIND);
+        blindVibration = prefs.getBoolean("blind_vibration", true);
+        floating = canDrawOverlays && drawOnTop && !blind;
+
+        Set<String> selected = prefs.getStringSet("languages", null);
+        if (selected == null) {
+            selected = new HashSet<>(Arrays.asList(context.getResources().getStringArray(R.array.default_languages)));
+        }
+        languages = Collections.unmodifiableSet(new HashSet<>(selected));
+
+        wordCompletion = prefs.getBoolean("word_completion", true);
+        letterHints = prefs.getBoolean("letter_hints", true);
+
+        deadzone = clamp(prefs.getInt("stick_deadzone", Math.round(StickQuantizer.DEFAULT_DEADZONE * 100)),
+                MIN_DEADZONE_PERCENT, MAX_DEADZONE_PERCENT) / 100f;
+        repeatDelayMs = clamp(prefs.getInt("repeat_delay", (int) KeyRepeater.DEFAULT_INITIAL_DELAY_MS),
+                MIN_REPEAT_DELAY_MS, MAX_REPEAT_DELAY_MS);
+        repeatIntervalMs = clamp(prefs.getInt("repeat_interval", (int) KeyRepeater.DEFAULT_MIN_INTERVAL_MS),
+                MIN_REPEAT_INTERVAL_MS, MAX_REPEAT_INTERVAL_MS);
+
+        latencyOverlay = prefs.getBoolean("latency_overlay", false);
+        recordInput = prefs.getBoolean("record_input", false);
+    }
+
+    public static KeyboardSettings read(Context context, SharedPreferences prefs) {
+        return new KeyboardSettings(context.getApplicationContext(), prefs);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Left and right stick quantizers with this snapshot's deadzone
+     */
+    public StickQuantizer leftQuantizer() {
+        return new StickQuantizer(8, deadzone, StickQuantizer.DEFAULT_DEADZONE_MARGIN,
+                StickQuantizer.DEFAULT_HYSTERESIS_DEGREES);
+    }
+
+    public StickQuantizer rightQuantizer() {
+        return new StickQuantizer(4, deadzone, StickQuantizer.DEFAULT_DEADZONE_MARGIN,
+                StickQuantizer.DEFAULT_HYSTERESIS_DEGREES);
+    }
+
+    /**
+     * Applies the repeat timing to a repeater
+     */
+    public void applyTo(KeyRepeater repeater) {
+        repeater.setTiming(repeatDelayMs, KeyRepeater.DEFAULT_START_INTERVAL_MS, repeatIntervalMs,
+                KeyRepeater.DEFAULT_ACCELERATION);
+    }
+}
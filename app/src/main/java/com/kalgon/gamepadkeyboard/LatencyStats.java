@@ -0,0 +1,81 @@
+package com.kalgon.gamepadkeyboard;
+
+import com.kalgon.gamepadkeyboard.engine.LatencyHistogram;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * How long each stage of the input path takes, from the controller event to the text
+ * landing in the editor. Published through the service's dump():
+ * <pre>
+ * adb shell dumpsys activity service com.kalgon.gamepadkeyboard/.GamepadKeyboardService [reset]
+ * </pre>
+ * Event times are in uptime milliseconds, which is the monotonic clock System.nanoTime()
+ * also reads on Android, so the stages that start at an event are only accurate to the
+ * millisecond.
+ */
+public class LatencyStats {
+
+    // From the event's timestamp to the service handling it
+    public static final int DISPATCH = 0;
+    // The engine's work on an event: quantizing the sticks, resolving the keys
+    public static final int ENGINE = 1;
+    // Updating the keyboard's views
+    public static final int VIEW = 2;
+    // The InputConnection calls that send a batch to the editor
+    public static final int COMMIT = 3;
+    // From a button press to the editor reporting the new selection
+    public static final int END_TO_END = 4;
+
+    private static final String[] STAGE_NAMES = {"dispatch", "engine", "view", "commit", "end-to-end"};
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGE_NAMES.length];
+
+    public LatencyStats() {
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            mHistograms[i] = new LatencyHistogram(STAGE_NAMES[i]);
+        }
+    }
+
+    public void record(int stage, long nanos) {
+        mHistograms[stage].record(nanos);
+    }
+
+    /**
+     * Records the time since an event's timestamp
+     */
+    public void recordSince(int stage, long eventTimeMillis) {
+        mHistograms[stage].record(System.nanoTime() - eventTimeMillis * 1000000L);
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+    }
+
+    public void dump(PrintWriter out) {
+        out.println("Input latency in microseconds, since the keyboard started or the last reset:");
+        out.println(String.format(Locale.ROOT, "  %-12s %8s %8s %8s %8s %8s",
+                "stage", "count", "p50", "p90", "p99", "max"));
+        for (LatencyHistogram histogram : mHistograms) {
+            out.println(String.format(Locale.ROOT, "  %-12s %8d %8.1f %8.1f %8.1f %8.1f",
+                    histogram.getName(), histogram.getCount(),
+                    histogram.getPercentile(0.5) / 1000.0, histogram.getPercentile(0.9) / 1000.0,
+                    histogram.getPercentile(0.99) / 1000.0, histogram.getMax() / 1000.0));
+        }
+    }
+
+    /**
+     * A short summary for the debug overlay: the median and 99th percentile of each stage
+     */
+    public void summarize(StringBuilder out) {
+        out.setLength(0);
+        for (LatencyHistogram histogram : mHistograms) {
+            if (out.length() > 0) out.append('\n');
+            out.append(String.format(Locale.ROOT, "%s %.2f / %.2f ms", histogram.getName(),
+                    histogram.getPercentile(0.5) / 1e6, histogram.getPercentile(0.99) / 1e6));
+        }
+    }
+}
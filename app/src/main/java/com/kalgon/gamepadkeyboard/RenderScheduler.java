@@ -0,0 +1,66 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.view.Choreographer;
+
+/**
+ * Limits the keyboard's view updates to one per frame, whatever the input event rate. The
+ * input path only marks what changed, as often as it likes between two frames, and at the
+ * next Choreographer frame the callback applies the latest state of everything marked, once.
+ * <p>
+ * Only use from the main thread.
+ */
+public class RenderScheduler implements Choreographer.FrameCallback {
+
+    // What can be marked dirty, as bits
+    public static final int STICK = 1;
+    // The keymap's labels, which change with the layout and shift
+    public static final int LABELS = 1 << 1;
+    // The candidates and the letter hints
+    public static final int CANDIDATES = 1 << 2;
+    // Where the floating keyboard is on the screen
+    public static final int WINDOW = 1 << 3;
+    // Everything drawn in the keyboard's views
+    public static final int VIEWS = STICK | LABELS | CANDIDATES;
+    public static final int ALL = VIEWS | WINDOW;
+
+    public interface Callback {
+        /**
+         * Called at most once per frame
+         *
+         * @param dirty The bits of what changed since the last call
+         */
+        void onRender(int dirty);
+    }
+
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+    private final Callback mCallback;
+    private int mDirty = 0;
+
+    public RenderScheduler(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Applies what changed at the next frame
+     */
+    public void invalidate(int what) {
+        if (mDirty == 0) mChoreographer.postFrameCallback(this);
+        mDirty |= what;
+    }
+
+    /**
+     * Forgets changes that were applied meanwhile, or that can't be anymore
+     */
+    public void cancel(int what) {
+        if (mDirty == 0) return;
+        mDirty &= ~what;
+        if (mDirty == 0) mChoreographer.removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        int dirty = mDirty;
+        mDirty = 0;
+        if (dirty != 0) mCallback.onRender(dirty);
+    }
+}
@@ -0,0 +1,142 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.util.Log;
+
+import com.kalgon.gamepadkeyboard.engine.InputRecording;
+import com.kalgon.gamepadkeyboard.engine.JoystickBatch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Records a session into an {@link InputRecording} file without touching the file on the
+ * main thread, which is the input path being recorded. The records are written to memory,
+ * and every CHUNK_BYTES the chunk is handed to a background executor that creates the
+ * file or appends to it.
+ * <p>
+ * Only record from the main thread.
+ */
+class SessionRecorder {
+
+    private static final int CHUNK_BYTES = 16 * 1024;
+
+    private final Executor mExecutor;
+    private final File mFile;
+    private final ByteArrayOutputStream mChunk = new ByteArrayOutputStream(CHUNK_BYTES * 2);
+    // Null once closed, or once writing failed
+    private InputRecording.Writer mWriter;
+    // Whether the file was created, only touched on the executor
+    private boolean mCreated = false;
+    // Set on the executor when writing failed, so the rest isn't even buffered
+    private volatile boolean mFailed = false;
+
+    /**
+     * @param executor A single thread the file is written on, in order
+     * @param keyMapNames The keymaps of the session, in keyboard order
+     */
+    SessionRecorder(Executor executor, File file, List<String> keyMapNames) {
+        mExecutor = executor;
+        mFile = file;
+        try {
+            mWriter = new InputRecording.Writer(mChunk, keyMapNames);
+        } catch (IOException e) {
+            // Writing to memory doesn't fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void startInput(long time, boolean symbols) {
+        if (stopped()) return;
+        try {
+            mWriter.startInput(time, symbols);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        wrote(false);
+    }
+
+    public void motion(long time, JoystickBatch batch) {
+        if (stopped()) return;
+        try {
+            mWriter.motion(time, batch);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        wrote(false);
+    }
+
+    public void key(boolean down, long time, int keyCode) {
+        if (stopped()) return;
+        try {
+            if (down) {
+                mWriter.keyDown(time, keyCode);
+            } else {
+                mWriter.keyUp(time, keyCode);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        wrote(false);
+    }
+
+    /**
+     * Writes what's left in the background
+     */
+    public void close() {
+        if (stopped()) return;
+        wrote(true);
+        mWriter = null;
+    }
+
+    /**
+     * Whether recording is over, dropping what's buffered if the file can't be written
+     */
+    private boolean stopped() {
+        if (mWriter == null) return true;
+        if (!mFailed) return false;
+        mWriter = null;
+        mChunk.reset();
+        return true;
+    }
+
+    /**
+     * Hands the chunk to the executor once it's big enough, or at the end
+     */
+    private void wrote(boolean last) {
+        try {
+            // Only moves the writer's buffer into mChunk
+            mWriter.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        if (!last && mChunk.size() < CHUNK_BYTES) return;
+
+        final byte[] bytes = mChunk.toByteArray();
+        mChunk.reset();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mFailed) return;
+                try {
+                    if (!mCreated) {
+                        File dir = mFile.getParentFile();
+                        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Can't create " + dir);
+                        Log.i("GamepadKeyboard", "Recording input to " + mFile);
+                    }
+                    try (OutputStream out = new FileOutputStream(mFile, mCreated)) {
+                        out.write(bytes);
+                    }
+                    mCreated = true;
+                } catch (IOException e) {
+                    Log.e("GamepadKeyboard", "Recording failed: " + e);
+                    mFailed = true;
+                }
+            }
+        });
+    }
+}
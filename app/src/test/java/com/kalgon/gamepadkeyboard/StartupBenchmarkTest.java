@@ -0,0 +1,106 @@
+package com.kalgon.gamepadkeyboard;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.InputType;
+import android.view.KeyEvent;
+import android.view.View;
+import android.view.inputmethod.BaseInputConnection;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Measures the keyboard's startup on a JVM: from creating the service to the first
+ * layout of its view, and to the first character committed to the editor. Fails when
+ * either goes over its budget.
+ * <p>
+ * The budgets are far above what the keyboard takes and are overridable with
+ * -Pstartup.firstLayoutBudgetMs and -Pstartup.firstCharacterBudgetMs. They don't catch
+ * small slowdowns, but they do catch keymaps or the view being prepared on the critical
+ * path again.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class StartupBenchmarkTest {
+
+    private static final long FIRST_LAYOUT_BUDGET_MS = Long.getLong("startup.firstLayoutBudgetMs", 2000);
+    private static final long FIRST_CHARACTER_BUDGET_MS = Long.getLong("startup.firstCharacterBudgetMs", 4000);
+    // How long to wait for the keymaps at most, before failing outright
+    private static final long TIMEOUT_MS = 30000;
+
+    /**
+     * The service with an editor of its own, which keeps what is committed to it
+     */
+    public static class TestService extends GamepadKeyboardService {
+        final StringBuilder committed = new StringBuilder();
+        private InputConnection mConnection = null;
+
+        @Override
+        public InputConnection getCurrentInputConnection() {
+            if (mConnection == null) {
+                mConnection = new BaseInputConnection(new View(this), true) {
+                    @Override
+                    public boolean commitText(CharSequence text, int newCursorPosition) {
+                        committed.append(text);
+                        return true;
+                    }
+                };
+            }
+            return mConnection;
+        }
+    }
+
+    @Test
+    public void startup() throws InterruptedException {
+        final long start = System.nanoTime();
+        TestService service = Robolectric.buildService(TestService.class).create().get();
+
+        // Runs the warm-up, which waits for the main thread to be idle
+        shadowOf(Looper.getMainLooper()).idle();
+
+        EditorInfo editorInfo = new EditorInfo();
+        editorInfo.inputType = InputType.TYPE_CLASS_TEXT;
+        View view = service.onCreateInputView();
+        assertNotNull("The keyboard should show in the input view without the overlay permission", view);
+        service.onStartInput(editorInfo, false);
+        service.onStartInputView(editorInfo, false);
+        view.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+        final long firstLayoutMs = (System.nanoTime() - start) / 1000000;
+
+        // Buttons don't type anything until the keymaps are loaded, so keep pressing like a user
+        // would. Robolectric's clock stands still while the looper is paused, so use the real one.
+        long deadline = System.nanoTime() + TIMEOUT_MS * 1000000;
+        while (service.committed.length() == 0) {
+            assertTrue("No character typed in " + TIMEOUT_MS + " ms", System.nanoTime() < deadline);
+            long eventTime = SystemClock.uptimeMillis();
+            service.onKeyDown(KeyEvent.KEYCODE_BUTTON_A,
+                    new KeyEvent(eventTime, eventTime, KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_BUTTON_A, 0));
+            service.onKeyUp(KeyEvent.KEYCODE_BUTTON_A,
+                    new KeyEvent(eventTime, eventTime, KeyEvent.ACTION_UP, KeyEvent.KEYCODE_BUTTON_A, 0));
+            // Delivers the loaded keymaps, then flushes the output to the editor
+            shadowOf(Looper.getMainLooper()).idle();
+            if (service.committed.length() == 0) Thread.sleep(1);
+        }
+        final long firstCharacterMs = (System.nanoTime() - start) / 1000000;
+
+        String timings = "first layout " + firstLayoutMs + " ms, first character \"" + service.committed
+                + "\" " + firstCharacterMs + " ms";
+        assertTrue("First layout over its " + FIRST_LAYOUT_BUDGET_MS + " ms budget: " + timings,
+                firstLayoutMs <= FIRST_LAYOUT_BUDGET_MS);
+        assertTrue("First character over its " + FIRST_CHARACTER_BUDGET_MS + " ms budget: " + timings,
+                firstCharacterMs <= FIRST_CHARACTER_BUDGET_MS);
+    }
+}
@@ -0,0 +1,43 @@
+package com.kalgon.gamepadkeyboard.benchmark;
+
+import com.kalgon.gamepadkeyboard.engine.GamepadKeys;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a face button press: resolving the text to commit for the current stick position
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ButtonBenchmark {
+
+    private static final int[] BUTTONS = {
+            GamepadKeys.KEYCODE_BUTTON_A,
+            GamepadKeys.KEYCODE_BUTTON_B,
+            GamepadKeys.KEYCODE_BUTTON_X,
+            GamepadKeys.KEYCODE_BUTTON_Y,
+    };
+
+    private int mIndex = 0;
+
+    @Benchmark
+    public CharSequence press(EngineState state) {
+        mIndex = (mIndex + 1) & 3;
+        return state.engine.pressButton(BUTTONS[mIndex]);
+    }
+
+    @Benchmark
+    public CharSequence pressShifted(EngineState state) {
+        mIndex = (mIndex + 1) & 3;
+        state.engine.setShift(mIndex < 2);
+        return state.engine.pressButton(BUTTONS[mIndex]);
+    }
+}
@@ -0,0 +1,88 @@
+package com.kalgon.gamepadkeyboard.benchmark;
+
+import com.kalgon.gamepadkeyboard.engine.Dictionary;
+import com.kalgon.gamepadkeyboard.engine.DictionaryFormat;
+import com.kalgon.gamepadkeyboard.engine.LearnedWords;
+import com.kalgon.gamepadkeyboard.engine.LetterModel;
+import com.kalgon.gamepadkeyboard.engine.WordCompleter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a keystroke with word completion on: following the typed letter and finding
+ * the best completions, or predicting the next letter's positions. The dictionary lives in a direct buffer, off the heap, like the
+ * memory-mapped one on the device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CompletionBenchmark {
+
+    private static final String TEXT = "the people think that this thing would work through the night ";
+
+    // One String per keystroke, made up front so the benchmark doesn't allocate them
+    private final String[] mKeys = new String[TEXT.length()];
+    private WordCompleter mCompleter;
+    private LetterModel mLetterModel;
+    private final String[] mCandidates = new String[3];
+    private int mIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File wordList = new File(System.getProperty("dictionary.dir", "app/src/main/dictionaries"), "english.txt");
+        List<DictionaryFormat.Entry> entries;
+        try (Reader in = new InputStreamReader(new FileInputStream(wordList), StandardCharsets.UTF_8)) {
+            entries = DictionaryFormat.readWordList(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DictionaryFormat.write(entries, out);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(out.size());
+        buffer.put(out.toByteArray());
+        buffer.flip();
+
+        for (int i = 0; i < mKeys.length; i++) {
+            mKeys[i] = TEXT.substring(i, i + 1);
+        }
+
+        LearnedWords learnedWords = new LearnedWords();
+        learnedWords.learn("thermometer");
+        learnedWords.learn("workshop");
+        mCompleter = new WordCompleter(mCandidates.length);
+        Dictionary dictionary = Dictionary.open(buffer);
+        mCompleter.setLanguage(dictionary, learnedWords);
+        mLetterModel = LetterModel.build(dictionary, EngineState.loadKeyMap("english"));
+    }
+
+    @Benchmark
+    public int keystroke() {
+        mCompleter.append(mKeys[mIndex]);
+        mIndex++;
+        if (mIndex == mKeys.length) mIndex = 0;
+        return mCompleter.complete(mCandidates);
+    }
+
+    @Benchmark
+    public int keystrokeLetterHints() {
+        mCompleter.append(mKeys[mIndex]);
+        mIndex++;
+        if (mIndex == mKeys.length) mIndex = 0;
+        return mLetterModel.predict(mCompleter.getWord());
+    }
+}
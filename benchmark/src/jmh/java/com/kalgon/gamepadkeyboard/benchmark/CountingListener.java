@@ -0,0 +1,35 @@
+package com.kalgon.gamepadkeyboard.benchmark;
+
+import com.kalgon.gamepadkeyboard.engine.InputEngine;
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+
+/**
+ * Stands in for the service: just counts the callbacks, so they can't be optimized away
+ */
+final class CountingListener implements InputEngine.Listener {
+
+    int stickChanges;
+    int keyMapChanges;
+    int cursorChanges;
+    int acceptedCandidates;
+
+    @Override
+    public void onStickPositionChanged(int stickPosition) {
+        stickChanges++;
+    }
+
+    @Override
+    public void onKeyMapChanged(KeyMap keyMap, boolean shift) {
+        keyMapChanges++;
+    }
+
+    @Override
+    public void onCursorDirectionChanged(int direction, int keyCode) {
+        cursorChanges++;
+    }
+
+    @Override
+    public void onAcceptCandidate() {
+        acceptedCandidates++;
+    }
+}
@@ -0,0 +1,40 @@
+package com.kalgon.gamepadkeyboard.benchmark;
+
+import com.kalgon.gamepadkeyboard.engine.InputEngine;
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+import com.kalgon.gamepadkeyboard.engine.KeyMapXml;
+import com.kalgon.gamepadkeyboard.engine.KeyboardSet;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An engine loaded with the English and Hebrew keymaps, started on English
+ */
+@State(Scope.Thread)
+public class EngineState {
+
+    CountingListener listener;
+    InputEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        listener = new CountingListener();
+        engine = new InputEngine(listener);
+        KeyMap english = loadKeyMap("english");
+        KeyMap hebrew = loadKeyMap("hebrew");
+        KeyMap symbols = loadKeyMap("symbols");
+        engine.setKeyboards(new KeyboardSet(Arrays.asList(english, hebrew), symbols));
+        engine.startInput(false);
+    }
+
+    static KeyMap loadKeyMap(String name) throws IOException {
+        return KeyMapXml.load(new File(System.getProperty("keymap.dir", "app/src/main/keymaps"), name + ".xml"));
+    }
+}
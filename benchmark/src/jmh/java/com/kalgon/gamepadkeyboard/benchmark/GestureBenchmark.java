@@ -0,0 +1,134 @@
+package com.kalgon.gamepadkeyboard.benchmark;
+
+import com.kalgon.gamepadkeyboard.engine.Dictionary;
+import com.kalgon.gamepadkeyboard.engine.DictionaryFormat;
+import com.kalgon.gamepadkeyboard.engine.GestureDecoder;
+import com.kalgon.gamepadkeyboard.engine.GesturePath;
+import com.kalgon.gamepadkeyboard.engine.GamepadKeys;
+import com.kalgon.gamepadkeyboard.engine.InputEngine;
+import com.kalgon.gamepadkeyboard.engine.InputRecording;
+import com.kalgon.gamepadkeyboard.engine.JoystickBatch;
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+import com.kalgon.gamepadkeyboard.engine.KeyboardSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the gestures of a recorded session, one per call. The decoder has to finish
+ * within a frame (16 ms) on the device, so watch the AverageTime. Pass a recording with
+ * English gestures pulled from a device with -Drecording=&lt;file&gt; (jmh.jvmArgsAppend),
+ * otherwise a synthetic session gesturing common words is used. How well they decode is
+ * checked by GestureDecoderTest, this only times it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GestureBenchmark {
+
+    private static final String[] WORDS = {
+            "the", "people", "think", "that", "this", "thing", "would", "work", "through", "night",
+            "between", "water", "house", "because", "little", "world", "before", "should", "never", "right"};
+
+    private GesturePath[] mPaths;
+    private GestureDecoder mDecoder;
+    private final String[] mWords = new String[3];
+    private int mIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File wordList = new File(System.getProperty("dictionary.dir", "app/src/main/dictionaries"), "english.txt");
+        List<DictionaryFormat.Entry> entries;
+        try (Reader in = new InputStreamReader(new FileInputStream(wordList), StandardCharsets.UTF_8)) {
+            entries = DictionaryFormat.readWordList(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DictionaryFormat.write(entries, out);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(out.size());
+        buffer.put(out.toByteArray());
+        buffer.flip();
+
+        KeyMap english = EngineState.loadKeyMap("english");
+        mDecoder = GestureDecoder.build(Dictionary.open(buffer), english);
+
+        String path = System.getProperty("recording");
+        byte[] recording;
+        if (path != null && !path.isEmpty()) {
+            recording = Files.readAllBytes(new File(path).toPath());
+        } else {
+            recording = SyntheticSession.gesture(english, WORDS);
+        }
+
+        List<GesturePath> paths = replayGestures(recording, english);
+        if (paths.isEmpty()) throw new IllegalStateException("The recording has no gestures");
+        mPaths = paths.toArray(new GesturePath[0]);
+    }
+
+    /**
+     * The paths of the gestures in a recording, as the engine follows them
+     */
+    private static List<GesturePath> replayGestures(byte[] recording, final KeyMap keyMap) throws Exception {
+        final List<GesturePath> paths = new ArrayList<>();
+        final InputEngine engine = new InputEngine(new CountingListener());
+        engine.setKeyboards(new KeyboardSet(Collections.singletonList(keyMap), keyMap));
+        InputRecording.Reader reader = new InputRecording.Reader(new ByteArrayInputStream(recording));
+        InputRecording.Visitor visitor = new InputRecording.Visitor() {
+            @Override
+            public void onStartInput(long time, boolean symbols) {
+                engine.startInput(false);
+            }
+
+            @Override
+            public void onMotion(long time, JoystickBatch batch) {
+                engine.processJoystickBatch(batch);
+            }
+
+            @Override
+            public void onKeyDown(long time, int keyCode) {
+                if (keyCode == GamepadKeys.KEYCODE_BUTTON_R2) engine.startGesture(time);
+            }
+
+            @Override
+            public void onKeyUp(long time, int keyCode) {
+                if (keyCode != GamepadKeys.KEYCODE_BUTTON_R2 || !engine.isGesturing()) return;
+                GesturePath gesture = engine.finishGesture(time);
+                if (gesture.isTap()) return;
+                GesturePath copy = new GesturePath();
+                copy.copyFrom(gesture);
+                paths.add(copy);
+            }
+        };
+        while (reader.next(visitor)) {
+            // Visits every event
+        }
+        return paths;
+    }
+
+    @Benchmark
+    public int decode() {
+        int count = mDecoder.decode(mPaths[mIndex], mWords);
+        mIndex++;
+        if (mIndex == mPaths.length) mIndex = 0;
+        return count;
+    }
+}
@@ -0,0 +1,55 @@
+package com.kalgon.gamepadkeyboard.benchmark;
+
+import com.kalgon.gamepadkeyboard.engine.JoystickBatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a batched MotionEvent, from copying the samples into the batch to the
+ * engine walking all of them. Every batch is a full flick around the rim of the
+ * stick, so each sample crosses into a new sector: the worst case for the listener.
+ * The batch sizes go up to what a loaded UI thread sees from a 1000 Hz controller.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JoystickBatchBenchmark {
+
+    @Param({"1", "8", "32", "128"})
+    public int batchSize;
+
+    private final JoystickBatch mBatch = new JoystickBatch(1);
+    private float[] mX;
+    private float[] mY;
+
+    @Setup
+    public void setUp() {
+        mX = new float[batchSize];
+        mY = new float[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            // Jump a bit over one sector per sample
+            double angle = 2 * Math.PI * i * 9 / 64;
+            mX[i] = (float) Math.sin(angle);
+            mY[i] = (float) Math.cos(angle);
+        }
+    }
+
+    @Benchmark
+    public int processBatch(EngineState state) {
+        mBatch.reset(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            mBatch.add(i, mX[i], mY[i], 0, 0, mY[i], mX[i]);
+        }
+        state.engine.processJoystickBatch(mBatch);
+        return state.engine.getStickPosition();
+    }
+}
@@ -0,0 +1,35 @@
+package com.kalgon.gamepadkeyboard.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of switching layouts with the hat: next language, and in and out of the symbols
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LayoutSwitchBenchmark {
+
+    private boolean mHatPressed = false;
+
+    @Benchmark
+    public Object nextKeyboard(EngineState state) {
+        mHatPressed = !mHatPressed;
+        state.engine.updateHat(mHatPressed ? 1.0f : 0, 0);
+        return state.engine.getCurrentKeyboard();
+    }
+
+    @Benchmark
+    public Object toggleSymbols(EngineState state) {
+        mHatPressed = !mHatPressed;
+        state.engine.updateHat(0, mHatPressed ? -1.0f : 0);
+        return state.engine.getCurrentKeyboard();
+    }
+}
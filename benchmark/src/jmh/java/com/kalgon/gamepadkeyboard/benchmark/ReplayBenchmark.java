@@ -0,0 +1,53 @@
+package com.kalgon.gamepadkeyboard.benchmark;
+
+import com.kalgon.gamepadkeyboard.engine.InputRecording;
+import com.kalgon.gamepadkeyboard.engine.InputReplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a whole recorded session through the engine. Pass a recording pulled from a
+ * device with -Drecording=&lt;file&gt; (jmh.jvmArgsAppend), otherwise a synthetic
+ * session typing a pangram is used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReplayBenchmark {
+
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog ";
+
+    private byte[] mRecording;
+    private InputReplayer mReplayer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String path = System.getProperty("recording");
+        if (path != null && !path.isEmpty()) {
+            mRecording = Files.readAllBytes(new File(path).toPath());
+        } else {
+            mRecording = SyntheticSession.type(EngineState.loadKeyMap("english"), TEXT + TEXT + TEXT);
+        }
+
+        File keyMapDir = new File(System.getProperty("keymap.dir", "app/src/main/keymaps"));
+        InputRecording.Reader reader = new InputRecording.Reader(new ByteArrayInputStream(mRecording));
+        mReplayer = new InputReplayer(InputReplayer.loadKeyboards(reader.getKeyMapNames(), keyMapDir));
+    }
+
+    @Benchmark
+    public InputReplayer.Result replay() throws Exception {
+        return mReplayer.replay(mRecording);
+    }
+}
@@ -0,0 +1,58 @@
+package com.kalgon.gamepadkeyboard.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single joystick MotionEvent: one left stick and one right stick update.
+ * The samples sweep the full circle at several deflections, including the center,
+ * so both the sector changes and the "same sector" path are exercised.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StickBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    private final float[] mX = new float[SAMPLES];
+    private final float[] mY = new float[SAMPLES];
+    private int mIndex = 0;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < SAMPLES; i++) {
+            double angle = 2 * Math.PI * i / 64;
+            float radius = (i / 64) % 4 * 0.33f;
+            mX[i] = (float) (Math.sin(angle) * radius);
+            mY[i] = (float) (Math.cos(angle) * radius);
+        }
+    }
+
+    private int nextSample() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+        return mIndex;
+    }
+
+    @Benchmark
+    public int leftStick(EngineState state) {
+        int i = nextSample();
+        state.engine.updateStickPosition(mX[i], mY[i], i);
+        return state.engine.getStickPosition();
+    }
+
+    @Benchmark
+    public int bothSticks(EngineState state) {
+        int i = nextSample();
+        state.engine.updateStickPosition(mX[i], mY[i], i);
+        state.engine.updateRightStickPosition(mY[i], mX[i]);
+        return state.engine.getStickPosition();
+    }
+}
@@ -0,0 +1,140 @@
+package com.kalgon.gamepadkeyboard.benchmark;
+
+import com.kalgon.gamepadkeyboard.engine.GamepadKeys;
+import com.kalgon.gamepadkeyboard.engine.InputRecording;
+import com.kalgon.gamepadkeyboard.engine.JoystickBatch;
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Makes an input recording of a steady typist, for when no real session is given:
+ * for every letter the stick glides to its position over a few samples, the button is
+ * pressed and released, and space is R1. Or of gestures: R2 is held while the stick
+ * glides through the positions of a word's letters.
+ */
+final class SyntheticSession {
+
+    private static final int[] BUTTONS = {
+            GamepadKeys.KEYCODE_BUTTON_A,
+            GamepadKeys.KEYCODE_BUTTON_B,
+            GamepadKeys.KEYCODE_BUTTON_X,
+            GamepadKeys.KEYCODE_BUTTON_Y,
+    };
+    private static final int SAMPLES_PER_MOVE = 4;
+    private static final long MOVE_MILLIS = 16;
+    private static final long PRESS_MILLIS = 80;
+
+    private SyntheticSession() {
+    }
+
+    static byte[] type(KeyMap keyMap, String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputRecording.Writer writer = new InputRecording.Writer(out, Arrays.asList(keyMap.getName()));
+        JoystickBatch batch = new JoystickBatch(SAMPLES_PER_MOVE);
+
+        long time = 0;
+        float x = 0;
+        float y = 0;
+        writer.startInput(time, false);
+        for (int i = 0; i < text.length(); i++) {
+            String letter = text.substring(i, i + 1);
+            if (letter.equals(" ")) {
+                writer.keyDown(time, GamepadKeys.KEYCODE_BUTTON_R1);
+                time += PRESS_MILLIS;
+                writer.keyUp(time, GamepadKeys.KEYCODE_BUTTON_R1);
+                continue;
+            }
+
+            int key = find(keyMap, letter);
+            int position = key / KeyMap.BUTTONS;
+            float targetX = positionX(position);
+            float targetY = positionY(position);
+
+            time += MOVE_MILLIS;
+            glide(writer, batch, time, x, y, targetX, targetY);
+            x = targetX;
+            y = targetY;
+
+            int button = BUTTONS[key % KeyMap.BUTTONS];
+            writer.keyDown(time, button);
+            time += PRESS_MILLIS;
+            writer.keyUp(time, button);
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Gestures every word: the stick goes to the first letter, R2 is pressed, the stick
+     * glides through the other letters' positions without stopping, and R2 is released
+     */
+    static byte[] gesture(KeyMap keyMap, String[] words) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputRecording.Writer writer = new InputRecording.Writer(out, Arrays.asList(keyMap.getName()));
+        JoystickBatch batch = new JoystickBatch(SAMPLES_PER_MOVE);
+
+        long time = 0;
+        float x = 0;
+        float y = 0;
+        writer.startInput(time, false);
+        for (String word : words) {
+            for (int i = 0; i < word.length(); i++) {
+                int position = find(keyMap, word.substring(i, i + 1)) / KeyMap.BUTTONS;
+                float targetX = positionX(position);
+                float targetY = positionY(position);
+                time += MOVE_MILLIS;
+                glide(writer, batch, time, x, y, targetX, targetY);
+                x = targetX;
+                y = targetY;
+                if (i == 0) writer.keyDown(time, GamepadKeys.KEYCODE_BUTTON_R2);
+            }
+            writer.keyUp(time, GamepadKeys.KEYCODE_BUTTON_R2);
+            time += MOVE_MILLIS;
+            glide(writer, batch, time, x, y, 0, 0);
+            x = 0;
+            y = 0;
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static float positionX(int position) {
+        return position == 0 ? 0 : (float) Math.sin(Math.toRadians((position - 1) * 45.0));
+    }
+
+    private static float positionY(int position) {
+        return position == 0 ? 0 : (float) -Math.cos(Math.toRadians((position - 1) * 45.0));
+    }
+
+    /**
+     * Moves the stick in a straight line, in one batch of samples spread over the move
+     * until time
+     */
+    private static void glide(InputRecording.Writer writer, JoystickBatch batch, long time,
+                              float x, float y, float targetX, float targetY) throws IOException {
+        batch.reset(SAMPLES_PER_MOVE);
+        for (int s = 1; s <= SAMPLES_PER_MOVE; s++) {
+            float t = (float) s / SAMPLES_PER_MOVE;
+            long sampleTime = time - MOVE_MILLIS * (SAMPLES_PER_MOVE - s) / SAMPLES_PER_MOVE;
+            batch.add(sampleTime, x + (targetX - x) * t, y + (targetY - y) * t, 0, 0, 0, 0);
+        }
+        writer.motion(time, batch);
+    }
+
+    /**
+     * @return position * BUTTONS + button index of the key typing letter
+     */
+    private static int find(KeyMap keyMap, String letter) {
+        for (int position = 0; position < KeyMap.STICK_POSITIONS; position++) {
+            for (int b = 0; b < KeyMap.BUTTONS; b++) {
+                if (keyMap.getKey(position, b).equals(letter)) {
+                    return position * KeyMap.BUTTONS + b;
+                }
+            }
+        }
+        throw new IllegalArgumentException("No key types " + letter);
+    }
+}
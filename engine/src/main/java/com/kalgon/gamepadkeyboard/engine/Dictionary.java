@@ -0,0 +1,110 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A read-only view of a compiled {@link DictionaryFormat} trie. Lookups only use
+ * absolute reads on the buffer, so the buffer can be memory-mapped, nothing is copied
+ * onto the heap and searching never allocates.
+ * <p>
+ * Nodes are identified by their offset in the buffer.
+ */
+public final class Dictionary {
+
+    public static final int NO_NODE = -1;
+
+    private final ByteBuffer mBuffer;
+    private final int mWordCount;
+    private final int mRoot;
+
+    private Dictionary(ByteBuffer buffer, int wordCount, int root) {
+        mBuffer = buffer;
+        mWordCount = wordCount;
+        mRoot = root;
+    }
+
+    public static Dictionary open(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < DictionaryFormat.HEADER_SIZE || buffer.getInt(0) != DictionaryFormat.MAGIC) {
+            throw new IOException("Not a compiled dictionary");
+        }
+        int version = buffer.getInt(4);
+        if (version != DictionaryFormat.VERSION) {
+            throw new IOException("Unsupported dictionary version " + version);
+        }
+        int root = buffer.getInt(12);
+        if (root < DictionaryFormat.HEADER_SIZE || root + DictionaryFormat.NODE_HEADER_SIZE > buffer.limit()) {
+            throw new IOException("Corrupt dictionary");
+        }
+        return new Dictionary(buffer, buffer.getInt(8), root);
+    }
+
+    public int getWordCount() {
+        return mWordCount;
+    }
+
+    public int getRoot() {
+        return mRoot;
+    }
+
+    public int getChildCount(int node) {
+        return mBuffer.getChar(node);
+    }
+
+    /**
+     * @return The frequency (1-255) of the word ending at this node, or 0 if no word ends here
+     */
+    public int getFrequency(int node) {
+        return mBuffer.get(node + 2) & 0xFF;
+    }
+
+    /**
+     * @return The highest frequency of any word at or below this node
+     */
+    public int getMaxFrequency(int node) {
+        return mBuffer.get(node + 3) & 0xFF;
+    }
+
+    public char getChildLabel(int node, int index) {
+        return mBuffer.getChar(childEntry(node, index));
+    }
+
+    public int getChild(int node, int index) {
+        return mBuffer.getInt(childEntry(node, index) + 2);
+    }
+
+    /**
+     * @return The child reached with c, or NO_NODE
+     */
+    public int findChild(int node, char c) {
+        int low = 0;
+        int high = getChildCount(node) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char label = getChildLabel(node, middle);
+            if (label < c) {
+                low = middle + 1;
+            } else if (label > c) {
+                high = middle - 1;
+            } else {
+                return getChild(node, middle);
+            }
+        }
+        return NO_NODE;
+    }
+
+    /**
+     * @return The node of the given prefix, or NO_NODE if no word starts with it
+     */
+    public int findPrefix(CharSequence prefix) {
+        int node = mRoot;
+        for (int i = 0; i < prefix.length() && node != NO_NODE; i++) {
+            node = findChild(node, prefix.charAt(i));
+        }
+        return node;
+    }
+
+    private static int childEntry(int node, int index) {
+        return node + DictionaryFormat.NODE_HEADER_SIZE + index * DictionaryFormat.CHILD_SIZE;
+    }
+}
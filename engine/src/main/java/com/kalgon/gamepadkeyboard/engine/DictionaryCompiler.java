@@ -0,0 +1,55 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Build step: compiles every word list (&lt;language&gt;.txt) in a directory to the
+ * {@link DictionaryFormat}, named after the language's keymap.
+ * <p>
+ * Usage: DictionaryCompiler &lt;word list dir&gt; &lt;assets output dir&gt;
+ */
+public final class DictionaryCompiler {
+
+    private DictionaryCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: DictionaryCompiler <word list dir> <assets output dir>");
+            System.exit(2);
+        }
+        File listDir = new File(args[0]);
+        File assetsDir = new File(new File(args[1]), DictionaryFormat.ASSETS_DIR);
+
+        File[] lists = listDir.listFiles((dir, name) -> name.endsWith(".txt"));
+        if (lists == null || lists.length == 0) {
+            throw new IOException("No word lists found in " + listDir);
+        }
+        Arrays.sort(lists);
+        if (!assetsDir.isDirectory() && !assetsDir.mkdirs()) {
+            throw new IOException("Can't create " + assetsDir);
+        }
+
+        for (File list : lists) {
+            String fileName = list.getName();
+            String name = fileName.substring(0, fileName.length() - ".txt".length());
+
+            List<DictionaryFormat.Entry> entries;
+            try (Reader in = new InputStreamReader(new FileInputStream(list), StandardCharsets.UTF_8)) {
+                entries = DictionaryFormat.readWordList(in);
+            }
+            try (OutputStream out = new FileOutputStream(new File(assetsDir, name + DictionaryFormat.EXTENSION))) {
+                DictionaryFormat.write(entries, out);
+            }
+        }
+    }
+}
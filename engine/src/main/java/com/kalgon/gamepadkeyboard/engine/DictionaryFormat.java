@@ -0,0 +1,169 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The compiled binary form of a word list: a trie laid out so it can be memory-mapped
+ * and searched in place, without loading it onto the heap. All values are big endian:
+ * <pre>
+ * int   magic ("GKDC")
+ * int   version
+ * int   word count
+ * int   offset of the root node
+ * node: char  child count
+ *       byte  frequency of the word ending here (0 if none)
+ *       byte  highest frequency in this node's subtree, to prune searches
+ *       (char label, int offset) for each child, sorted by label
+ * </pre>
+ * Frequencies are scaled to 1-255.
+ */
+public final class DictionaryFormat {
+
+    public static final int MAGIC = 0x474B4443;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final String EXTENSION = ".dict";
+    public static final String ASSETS_DIR = "dictionaries";
+
+    static final int NODE_HEADER_SIZE = 4;
+    static final int CHILD_SIZE = 6;
+
+    private DictionaryFormat() {
+    }
+
+    /**
+     * A word and its frequency, as read from a word list
+     */
+    public static final class Entry {
+        public final String word;
+        public final double frequency;
+
+        public Entry(String word, double frequency) {
+            this.word = word;
+            this.frequency = frequency;
+        }
+    }
+
+    /**
+     * Reads a word list: one word per line, optionally followed by whitespace and its
+     * frequency. Lines without a frequency are taken to be ordered from the most common
+     * word down, and get a Zipf frequency from their rank. Words are lower-cased, and
+     * blank lines and lines starting with # are skipped.
+     */
+    public static List<Entry> readWordList(Reader reader) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int rank = 0;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            rank++;
+            String[] fields = line.split("\\s+");
+            double frequency = fields.length > 1 ? Double.parseDouble(fields[1]) : 1.0 / rank;
+            if (frequency <= 0) {
+                throw new IOException("Invalid frequency in line: " + line);
+            }
+            entries.add(new Entry(fields[0].toLowerCase(Locale.ROOT), frequency));
+        }
+        return entries;
+    }
+
+    private static final class Node {
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        int frequency = 0;
+        int maxFrequency = 0;
+        int offset;
+    }
+
+    public static void write(List<Entry> entries, OutputStream out) throws IOException {
+        double maxFrequency = 0;
+        double minFrequency = Double.MAX_VALUE;
+        for (Entry entry : entries) {
+            maxFrequency = Math.max(maxFrequency, entry.frequency);
+            minFrequency = Math.min(minFrequency, entry.frequency);
+        }
+
+        Node root = new Node();
+        int wordCount = 0;
+        for (Entry entry : entries) {
+            if (entry.word.isEmpty() || entry.word.length() > WordCompleter.MAX_WORD_LENGTH) continue;
+
+            Node node = root;
+            for (int i = 0; i < entry.word.length(); i++) {
+                char c = entry.word.charAt(i);
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            if (node.frequency == 0) wordCount++;
+            node.frequency = Math.max(node.frequency, scale(entry.frequency, minFrequency, maxFrequency));
+        }
+
+        List<Node> order = new ArrayList<>();
+        layout(root, HEADER_SIZE, order);
+        updateMaxFrequency(root);
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(wordCount);
+        data.writeInt(root.offset);
+        for (Node node : order) {
+            data.writeChar(node.children.size());
+            data.writeByte(node.frequency);
+            data.writeByte(node.maxFrequency);
+            for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                data.writeChar(child.getKey());
+                data.writeInt(child.getValue().offset);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Log scale, so the long tail of rare words still gets distinct values
+     */
+    private static int scale(double frequency, double min, double max) {
+        if (max <= min) return 255;
+        double position = Math.log(frequency / min) / Math.log(max / min);
+        return 1 + (int) Math.round(254 * position);
+    }
+
+    /**
+     * Assigns offsets in depth first order, so a word's nodes are close to each other
+     *
+     * @return The offset after this node's subtree
+     */
+    private static int layout(Node node, int offset, List<Node> order) {
+        node.offset = offset;
+        order.add(node);
+        offset += NODE_HEADER_SIZE + node.children.size() * CHILD_SIZE;
+        for (Node child : node.children.values()) {
+            offset = layout(child, offset, order);
+        }
+        return offset;
+    }
+
+    private static int updateMaxFrequency(Node node) {
+        int max = node.frequency;
+        for (Node child : node.children.values()) {
+            max = Math.max(max, updateMaxFrequency(child));
+        }
+        node.maxFrequency = max;
+        return max;
+    }
+}
@@ -0,0 +1,267 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import java.util.Arrays;
+
+/**
+ * Turns a stick gesture into words: the stick glides through the positions of a word's
+ * letters, and the words whose letters best explain the positions it went through are
+ * found with a beam search over the dictionary's trie.
+ * <p>
+ * A hypothesis is a trie node (the letters so far) and the path segment its last letter
+ * was placed on. The next letter either stays on that segment, when it's in the same
+ * position, or is placed on the next segment in its position, skipping the segments in
+ * between. Skipping costs more the longer the stick stayed in a segment, since the stick
+ * only passes briefly through the positions it crosses on its way, and staying costs a
+ * little, since nothing in the path shows the letter. Word frequencies weigh against the
+ * costs, all in the dictionary's log2 units. Each length keeps the best BEAM_WIDTH
+ * hypotheses, ranked by what they'd score if the word ended there.
+ * <p>
+ * Built once per language, like the {@link LetterModel}. Decoding reuses preallocated
+ * arrays, and only allocates the result strings, so only decode from one thread.
+ */
+public final class GestureDecoder {
+
+    public static final int BEAM_WIDTH = 48;
+
+    // The dictionary keeps log frequencies: f/32 is the log2 of the word's weight
+    private static final float FREQUENCY_LOG_STEP = 32;
+    // Skipping a segment, plus for every millisecond the stick spent in it
+    private static final float SKIP_COST = 1.5f;
+    private static final float SKIP_COST_PER_MS = 0.125f;
+    // Skipping the first or the last segment: the gesture starts on the first letter and
+    // is let go on the last
+    private static final float END_SKIP_COST = 8f;
+    // Two letters in a row on the same segment
+    private static final float STAY_COST = 1f;
+
+    private static final int MAX_DEPTH = WordCompleter.MAX_WORD_LENGTH;
+
+    private final Dictionary mDictionary;
+    // The stick position of each letter from mFirstChar, -1 for those not on the keymap
+    private final char mFirstChar;
+    private final byte[] mLetterPositions;
+
+    // The cost of skipping each segment, and of skipping every segment from there to the end
+    private final float[] mSkipCosts = new float[GesturePath.MAX_SEGMENTS];
+    private final float[] mSuffixCosts = new float[GesturePath.MAX_SEGMENTS + 1];
+
+    // The hypotheses of each length, by depth then index
+    private final int[][] mNodes = new int[MAX_DEPTH][BEAM_WIDTH];
+    private final int[][] mSegments = new int[MAX_DEPTH][BEAM_WIDTH];
+    private final float[][] mScores = new float[MAX_DEPTH][BEAM_WIDTH];
+    private final float[][] mEstimates = new float[MAX_DEPTH][BEAM_WIDTH];
+    private final char[][] mLetters = new char[MAX_DEPTH][BEAM_WIDTH];
+    private final int[][] mParents = new int[MAX_DEPTH][BEAM_WIDTH];
+    private final int[] mBeamSizes = new int[MAX_DEPTH];
+    private int mWorst = 0;
+
+    // The best words so far, best first
+    private int[] mResultNodes = new int[0];
+    private int[] mResultDepths = new int[0];
+    private int[] mResultIndexes = new int[0];
+    private float[] mResultScores = new float[0];
+    private int mResultCount = 0;
+    private final char[] mWord = new char[MAX_DEPTH];
+
+    private GestureDecoder(Dictionary dictionary, char firstChar, byte[] letterPositions) {
+        mDictionary = dictionary;
+        mFirstChar = firstChar;
+        mLetterPositions = letterPositions;
+    }
+
+    /**
+     * @param dictionary The language's words and frequencies
+     * @param keyMap     The language's keymap, which says where every letter is
+     * @return Null if the keymap has no letters
+     */
+    public static GestureDecoder build(Dictionary dictionary, KeyMap keyMap) {
+        int[] keyPositions = new int[KeyMap.STICK_POSITIONS * KeyMap.BUTTONS];
+        String letters = keyMap.findLetters(keyPositions);
+        if (letters.isEmpty()) return null;
+
+        char first = Character.MAX_VALUE;
+        char last = 0;
+        for (int i = 0; i < letters.length(); i++) {
+            first = (char) Math.min(first, letters.charAt(i));
+            last = (char) Math.max(last, letters.charAt(i));
+        }
+        byte[] positions = new byte[last - first + 1];
+        Arrays.fill(positions, (byte) -1);
+        for (int i = 0; i < letters.length(); i++) {
+            positions[letters.charAt(i) - first] = (byte) keyPositions[i];
+        }
+        return new GestureDecoder(dictionary, first, positions);
+    }
+
+    private int letterPosition(char c) {
+        int i = c - mFirstChar;
+        return i >= 0 && i < mLetterPositions.length ? mLetterPositions[i] : -1;
+    }
+
+    /**
+     * @param path The positions the stick went through
+     * @param out  Receives the best words, best first
+     * @return How many words were put in out
+     */
+    public int decode(GesturePath path, String[] out) {
+        final int segments = path.size();
+        if (segments == 0 || out.length == 0) return 0;
+
+        mSuffixCosts[segments] = 0;
+        for (int s = segments - 1; s >= 0; s--) {
+            mSkipCosts[s] = SKIP_COST + SKIP_COST_PER_MS * path.getMillis(s)
+                    + (s == 0 || s == segments - 1 ? END_SKIP_COST : 0);
+            mSuffixCosts[s] = mSuffixCosts[s + 1] + mSkipCosts[s];
+        }
+        if (mResultNodes.length != out.length) {
+            mResultNodes = new int[out.length];
+            mResultDepths = new int[out.length];
+            mResultIndexes = new int[out.length];
+            mResultScores = new float[out.length];
+        }
+        mResultCount = 0;
+
+        for (int depth = 0; depth < MAX_DEPTH; depth++) {
+            mBeamSizes[depth] = 0;
+            if (depth == 0) {
+                expand(path, 0, mDictionary.getRoot(), -1, 0, -1);
+            } else {
+                final int parents = mBeamSizes[depth - 1];
+                for (int p = 0; p < parents; p++) {
+                    expand(path, depth, mNodes[depth - 1][p], mSegments[depth - 1][p], mScores[depth - 1][p], p);
+                }
+            }
+            if (mBeamSizes[depth] == 0) break;
+            collectWords(depth);
+        }
+
+        for (int r = 0; r < mResultCount; r++) {
+            out[r] = spell(mResultDepths[r], mResultIndexes[r]);
+        }
+        return mResultCount;
+    }
+
+    /**
+     * Offers every letter that can follow a hypothesis to the beam of the given depth
+     */
+    private void expand(GesturePath path, int depth, int node, int segment, float score, int parent) {
+        final int childCount = mDictionary.getChildCount(node);
+        for (int i = 0; i < childCount; i++) {
+            char letter = mDictionary.getChildLabel(node, i);
+            int position = letterPosition(letter);
+            if (position < 0) continue;
+            int child = mDictionary.getChild(node, i);
+
+            if (segment >= 0 && path.getPosition(segment) == position) {
+                offer(depth, child, segment, score - STAY_COST, letter, parent);
+            }
+            for (int next = segment + 1; next < path.size(); next++) {
+                if (path.getPosition(next) == position) {
+                    offer(depth, child, next, score - (mSuffixCosts[segment + 1] - mSuffixCosts[next]), letter, parent);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void offer(int depth, int node, int segment, float score, char letter, int parent) {
+        // What the word would score if it ended here, at best
+        float estimate = score - mSuffixCosts[segment + 1] + mDictionary.getMaxFrequency(node) / FREQUENCY_LOG_STEP;
+        int[] nodes = mNodes[depth];
+        int[] segments = mSegments[depth];
+        float[] estimates = mEstimates[depth];
+        int size = mBeamSizes[depth];
+
+        int slot = -1;
+        for (int i = 0; i < size; i++) {
+            if (nodes[i] == node && segments[i] == segment) {
+                // The same letters placed the same way, keep the cheaper way there
+                if (estimate <= estimates[i]) return;
+                slot = i;
+                break;
+            }
+        }
+        if (slot < 0) {
+            if (size < BEAM_WIDTH) {
+                slot = size;
+                mBeamSizes[depth] = size + 1;
+            } else if (estimate > estimates[mWorst]) {
+                slot = mWorst;
+            } else {
+                return;
+            }
+        }
+
+        nodes[slot] = node;
+        segments[slot] = segment;
+        mScores[depth][slot] = score;
+        estimates[slot] = estimate;
+        mLetters[depth][slot] = letter;
+        mParents[depth][slot] = parent;
+
+        if (mBeamSizes[depth] == BEAM_WIDTH) {
+            int worst = 0;
+            for (int i = 1; i < BEAM_WIDTH; i++) {
+                if (estimates[i] < estimates[worst]) worst = i;
+            }
+            mWorst = worst;
+        }
+    }
+
+    /**
+     * Adds the words that end at the hypotheses of this depth to the results
+     */
+    private void collectWords(int depth) {
+        final int size = mBeamSizes[depth];
+        for (int i = 0; i < size; i++) {
+            int node = mNodes[depth][i];
+            int frequency = mDictionary.getFrequency(node);
+            if (frequency == 0) continue;
+            float score = mScores[depth][i] - mSuffixCosts[mSegments[depth][i] + 1] + frequency / FREQUENCY_LOG_STEP;
+            addResult(node, depth, i, score);
+        }
+    }
+
+    private void addResult(int node, int depth, int index, float score) {
+        // The same word placed differently on the path
+        int at = mResultCount;
+        for (int r = 0; r < mResultCount; r++) {
+            if (mResultNodes[r] == node) {
+                if (score <= mResultScores[r]) return;
+                at = r;
+                break;
+            }
+        }
+        if (at == mResultCount) {
+            if (mResultCount < mResultNodes.length) {
+                mResultCount++;
+            } else if (score > mResultScores[mResultCount - 1]) {
+                at = mResultCount - 1;
+            } else {
+                return;
+            }
+        }
+
+        // Move it up to keep the results sorted
+        while (at > 0 && mResultScores[at - 1] < score) {
+            mResultNodes[at] = mResultNodes[at - 1];
+            mResultDepths[at] = mResultDepths[at - 1];
+            mResultIndexes[at] = mResultIndexes[at - 1];
+            mResultScores[at] = mResultScores[at - 1];
+            at--;
+        }
+        mResultNodes[at] = node;
+        mResultDepths[at] = depth;
+        mResultIndexes[at] = index;
+        mResultScores[at] = score;
+    }
+
+    private String spell(int depth, int index) {
+        int length = depth + 1;
+        for (int d = depth; d >= 0; d--) {
+            mWord[d] = mLetters[d][index];
+            index = mParents[d][index];
+        }
+        return new String(mWord, 0, length);
+    }
+}
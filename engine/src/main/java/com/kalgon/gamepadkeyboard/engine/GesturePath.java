@@ -0,0 +1,79 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+/**
+ * The stick positions a gesture went through, in order, with how long the stick stayed
+ * in each. Consecutive samples in the same position make one segment, which lasts from
+ * its first sample to the first sample of the next one. The time comes from the events
+ * rather than the sample count: controllers report at very different rates, and send
+ * nothing while the stick is held still. The arrays are preallocated, so following a
+ * gesture never allocates.
+ */
+public final class GesturePath {
+
+    // Far more than any word needs, the rest of a longer gesture is dropped
+    public static final int MAX_SEGMENTS = 64;
+
+    private final int[] mPositions = new int[MAX_SEGMENTS];
+    // When the stick entered each segment, in milliseconds
+    private final long[] mStartTimes = new long[MAX_SEGMENTS];
+    // When the last segment ended: the gesture's end, or its last sample until then
+    private long mEndTime = 0;
+    private int mSize = 0;
+
+    public void reset() {
+        mSize = 0;
+    }
+
+    /**
+     * Adds a sample of the stick's position (0-8)
+     *
+     * @param time The sample's event time, in milliseconds
+     */
+    public void add(int position, long time) {
+        if (mSize > 0 && mPositions[mSize - 1] == position || mSize == MAX_SEGMENTS) {
+            mEndTime = time;
+            return;
+        }
+        mPositions[mSize] = position;
+        mStartTimes[mSize] = time;
+        mEndTime = time;
+        mSize++;
+    }
+
+    /**
+     * Ends the last segment, where the gesture was let go
+     */
+    public void finish(long time) {
+        if (mSize > 0) mEndTime = Math.max(mStartTimes[mSize - 1], time);
+    }
+
+    public void copyFrom(GesturePath other) {
+        System.arraycopy(other.mPositions, 0, mPositions, 0, other.mSize);
+        System.arraycopy(other.mStartTimes, 0, mStartTimes, 0, other.mSize);
+        mEndTime = other.mEndTime;
+        mSize = other.mSize;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getPosition(int segment) {
+        return mPositions[segment];
+    }
+
+    /**
+     * @return How long the stick stayed in the segment, in milliseconds
+     */
+    public long getMillis(int segment) {
+        long end = segment + 1 < mSize ? mStartTimes[segment + 1] : mEndTime;
+        return end - mStartTimes[segment];
+    }
+
+    /**
+     * Whether the stick never left the position it started in, so this was a press and not a gesture
+     */
+    public boolean isTap() {
+        return mSize <= 1;
+    }
+}
@@ -0,0 +1,284 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+/**
+ * The per-event input logic of the keyboard: turns stick, hat and button input into
+ * stick positions, layout changes and text. It has no Android dependencies, so the
+ * service just feeds it the values it reads from the MotionEvents and KeyEvents and
+ * reacts to the changes through the {@link Listener}.
+ */
+public class InputEngine {
+
+    /**
+     * Callbacks for state changes the UI has to reflect.
+     */
+    public interface Listener {
+        /**
+         * The left stick moved to a new position (0-8)
+         */
+        void onStickPositionChanged(int stickPosition);
+
+        /**
+         * The current keymap or the shift state changed, so all the labels need updating
+         */
+        void onKeyMapChanged(KeyMap keyMap, boolean shift);
+
+        /**
+         * The right stick moved to a new direction (0, 1, 3, 5 or 7).
+         *
+         * @param keyCode The DPAD key code for the new direction, or 0 when centered
+         */
+        void onCursorDirectionChanged(int direction, int keyCode);
+
+        /**
+         * The hat was pushed down, to type the selected word completion
+         */
+        void onAcceptCandidate();
+    }
+
+    private final Listener mListener;
+
+    // Position of the stick (which represents the letters available). 0-8 where
+    // 0 is centered, 1 is 12 o'clock and advancing clockwise every eighth
+    private int mStickPosition = 0;
+    private int mRightStickPosition = 0;
+    // The right stick's last values, for moving the cursor at a speed that follows them
+    private float mRightStickX = 0;
+    private float mRightStickY = 0;
+
+    private StickQuantizer mLeftQuantizer = StickQuantizer.eightWay();
+    // We're looking for specific up-down-left-right, so we're ignoring diagonals
+    // Keeping the numbering 0, 1, 3, 5, 7 for consistency with the left stick directions
+    private StickQuantizer mRightQuantizer = StickQuantizer.fourWay();
+
+    // The last hat state, so a hat press only acts once and not for every sample while it's held
+    private float mHatX = 0;
+    private float mHatY = 0;
+
+    private KeyMap mCurrentKeyboard = null;
+    private KeyboardSet mKeyboards = KeyboardSet.EMPTY;
+    private int mKeyboardIndex = 0;
+    private boolean mSymbolsShown = false;
+
+    private boolean mShift = false;
+
+    // The left stick's path while a gesture is held
+    private final GesturePath mGesturePath = new GesturePath();
+    private boolean mGesturing = false;
+
+    public InputEngine(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Switches to a new set of keymaps. Until the first set arrives there is no
+     * current keyboard and button presses produce no text.
+     */
+    public void setKeyboards(KeyboardSet keyboards) {
+        mKeyboards = keyboards;
+        if (mKeyboardIndex >= mKeyboards.size()) mKeyboardIndex = 0;
+        selectCurrentKeyboard();
+    }
+
+    /**
+     * Makes the current keyboard match the selected language or the symbols, and
+     * tells the listener if that changed it
+     */
+    private void selectCurrentKeyboard() {
+        KeyMap keyboard;
+        if (mSymbolsShown) {
+            keyboard = mKeyboards.getSymbols();
+        } else {
+            keyboard = mKeyboards.size() == 0 ? null : mKeyboards.get(mKeyboardIndex);
+        }
+
+        if (keyboard != mCurrentKeyboard) {
+            mCurrentKeyboard = keyboard;
+            if (mCurrentKeyboard != null) {
+                mListener.onKeyMapChanged(mCurrentKeyboard, mShift);
+            }
+        }
+    }
+
+    public void setQuantizers(StickQuantizer left, StickQuantizer right) {
+        mLeftQuantizer = left;
+        mRightQuantizer = right;
+        mLeftQuantizer.reset();
+        mRightQuantizer.reset();
+    }
+
+    public KeyboardSet getKeyboards() {
+        return mKeyboards;
+    }
+
+    public KeyMap getCurrentKeyboard() {
+        return mCurrentKeyboard;
+    }
+
+    public int getStickPosition() {
+        return mStickPosition;
+    }
+
+    public float getRightStickX() {
+        return mRightStickX;
+    }
+
+    public float getRightStickY() {
+        return mRightStickY;
+    }
+
+    public boolean isShift() {
+        return mShift;
+    }
+
+    /**
+     * Called when starting to edit a new field.
+     *
+     * @param symbols Whether the field is numeric and should start with the symbols keyboard
+     */
+    public void startInput(boolean symbols) {
+        mSymbolsShown = symbols;
+        selectCurrentKeyboard();
+    }
+
+    public void setShift(boolean shift) {
+        mShift = shift;
+        if (mCurrentKeyboard != null) {
+            mListener.onKeyMapChanged(mCurrentKeyboard, mShift);
+        }
+    }
+
+    /**
+     * @return The text to commit for a face button press, or null if the key code
+     * is not one of the face buttons
+     */
+    public String pressButton(int keyCode) {
+        if (mCurrentKeyboard == null) return null;
+
+        switch (keyCode) {
+            case GamepadKeys.KEYCODE_BUTTON_A:
+            case GamepadKeys.KEYCODE_BUTTON_B:
+            case GamepadKeys.KEYCODE_BUTTON_X:
+            case GamepadKeys.KEYCODE_BUTTON_Y:
+                return mCurrentKeyboard.getKey(mStickPosition, mCurrentKeyboard.keyCodeToButtonIndex(keyCode), mShift);
+        }
+        return null;
+    }
+
+    /**
+     * Starts following the left stick's path, from where it is now
+     *
+     * @param time The event time, in milliseconds
+     */
+    public void startGesture(long time) {
+        mGesturePath.reset();
+        mGesturePath.add(mStickPosition, time);
+        mGesturing = true;
+    }
+
+    /**
+     * @param time The event time, in milliseconds
+     * @return The path since startGesture(), valid until the next gesture starts
+     */
+    public GesturePath finishGesture(long time) {
+        if (mGesturing) mGesturePath.finish(time);
+        mGesturing = false;
+        return mGesturePath;
+    }
+
+    public boolean isGesturing() {
+        return mGesturing;
+    }
+
+    /**
+     * Walks all the samples of a batch, oldest first, so fast flicks don't skip
+     * the sectors the stick passed through between two events.
+     */
+    public void processJoystickBatch(JoystickBatch batch) {
+        final int size = batch.size();
+        for (int i = 0; i < size; i++) {
+            updateStickPosition(batch.get(i, JoystickBatch.AXIS_X), batch.get(i, JoystickBatch.AXIS_Y), batch.getTime(i));
+            updateHat(batch.get(i, JoystickBatch.AXIS_HAT_X), batch.get(i, JoystickBatch.AXIS_HAT_Y));
+            updateRightStickPosition(batch.get(i, JoystickBatch.AXIS_RIGHT_X), batch.get(i, JoystickBatch.AXIS_RIGHT_Y));
+        }
+    }
+
+    public void updateHat(float hatX, float hatY) {
+        if (hatX == mHatX && hatY == mHatY) return;
+        mHatX = hatX;
+        mHatY = hatY;
+
+        if (hatY == -1.0f) {
+            toggleSymbols(false);
+        } else if (hatY == 1.0f) {
+            mListener.onAcceptCandidate();
+        } else if (hatX == 1.0f) {
+            nextKeyboard();
+        } else if (hatX == -1.0f) {
+            prevKeyboard();
+        }
+    }
+
+    public void nextKeyboard() {
+        if (mKeyboards.size() == 0) return;
+        mKeyboardIndex++;
+        if (mKeyboardIndex >= mKeyboards.size()) mKeyboardIndex = 0;
+        if (!mSymbolsShown) {
+            mCurrentKeyboard = mKeyboards.get(mKeyboardIndex);
+            mListener.onKeyMapChanged(mCurrentKeyboard, mShift);
+        }
+    }
+
+    public void prevKeyboard() {
+        if (mKeyboards.size() == 0) return;
+        mKeyboardIndex--;
+        if (mKeyboardIndex < 0) mKeyboardIndex = mKeyboards.size() - 1;
+        if (!mSymbolsShown) {
+            mCurrentKeyboard = mKeyboards.get(mKeyboardIndex);
+            mListener.onKeyMapChanged(mCurrentKeyboard, mShift);
+        }
+    }
+
+    public void toggleSymbols(boolean force) {
+        mSymbolsShown = force || !mSymbolsShown;
+        selectCurrentKeyboard();
+    }
+
+    /**
+     * @param time The sample's event time, in milliseconds, which times the gesture's path
+     */
+    public void updateStickPosition(float x, float y, long time) {
+        int newStickPos = mLeftQuantizer.quantize(x, y);
+        // Every sample counts, so the path doesn't miss the positions the stick only crossed
+        if (mGesturing) mGesturePath.add(newStickPos, time);
+
+        if (newStickPos != mStickPosition) {
+            mStickPosition = newStickPos;
+            mListener.onStickPositionChanged(mStickPosition);
+        }
+    }
+
+    public void updateRightStickPosition(float x, float y) {
+        mRightStickX = x;
+        mRightStickY = y;
+        int newDirection = mRightQuantizer.quantize(x, y);
+
+        if (newDirection != mRightStickPosition) {
+            mRightStickPosition = newDirection;
+            mListener.onCursorDirectionChanged(mRightStickPosition, directionToKeyCode(mRightStickPosition));
+        }
+    }
+
+    private static int directionToKeyCode(int direction) {
+        switch (direction) {
+            case 1:
+                return GamepadKeys.KEYCODE_DPAD_UP;
+            case 3:
+                return GamepadKeys.KEYCODE_DPAD_RIGHT;
+            case 5:
+                return GamepadKeys.KEYCODE_DPAD_DOWN;
+            case 7:
+                return GamepadKeys.KEYCODE_DPAD_LEFT;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,206 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A recorded input session: the stick and hat values and the gamepad key events the
+ * keyboard received, so it can be replayed on a JVM with {@link InputReplayer}.
+ * All values are big endian, varints are unsigned LEB128:
+ * <pre>
+ * int    magic ("GKIR")
+ * int    version
+ * byte   keymap count, then the keymap names (modified UTF-8), in keyboard order
+ * record: byte   type
+ *         varint milliseconds since the previous record
+ *         START_INPUT: byte 1 if the field starts on the symbols
+ *         MOTION:      byte sample count, then for each sample: varint milliseconds before
+ *                      the record, and its JoystickBatch axes as floats
+ *         KEY_DOWN, KEY_UP: varint key code
+ * </pre>
+ */
+public final class InputRecording {
+
+    public static final int MAGIC = 0x474B4952;
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".gkr";
+
+    static final int TYPE_START_INPUT = 1;
+    static final int TYPE_MOTION = 2;
+    static final int TYPE_KEY_DOWN = 3;
+    static final int TYPE_KEY_UP = 4;
+
+    private InputRecording() {
+    }
+
+    /**
+     * What a recording holds, in order
+     */
+    public interface Visitor {
+        void onStartInput(long time, boolean symbols);
+
+        void onMotion(long time, JoystickBatch batch);
+
+        void onKeyDown(long time, int keyCode);
+
+        void onKeyUp(long time, int keyCode);
+    }
+
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream mOut;
+        private long mLastTime = -1;
+
+        /**
+         * @param keyMapNames The keymaps the session was typed with, in keyboard order
+         */
+        public Writer(OutputStream out, List<String> keyMapNames) throws IOException {
+            mOut = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+            mOut.writeInt(MAGIC);
+            mOut.writeInt(VERSION);
+            mOut.writeByte(keyMapNames.size());
+            for (String name : keyMapNames) {
+                mOut.writeUTF(name);
+            }
+        }
+
+        public void startInput(long time, boolean symbols) throws IOException {
+            writeHeader(TYPE_START_INPUT, time);
+            mOut.writeByte(symbols ? 1 : 0);
+        }
+
+        public void motion(long time, JoystickBatch batch) throws IOException {
+            // A MotionEvent never batches this many, but split just in case
+            for (int start = 0; start < batch.size(); start += 255) {
+                int count = Math.min(255, batch.size() - start);
+                writeHeader(TYPE_MOTION, time);
+                mOut.writeByte(count);
+                for (int i = start; i < start + count; i++) {
+                    writeVarint(Math.max(0, time - batch.getTime(i)));
+                    for (int axis = 0; axis < JoystickBatch.AXIS_COUNT; axis++) {
+                        mOut.writeFloat(batch.get(i, axis));
+                    }
+                }
+            }
+        }
+
+        public void keyDown(long time, int keyCode) throws IOException {
+            writeHeader(TYPE_KEY_DOWN, time);
+            writeVarint(keyCode);
+        }
+
+        public void keyUp(long time, int keyCode) throws IOException {
+            writeHeader(TYPE_KEY_UP, time);
+            writeVarint(keyCode);
+        }
+
+        private void writeHeader(int type, long time) throws IOException {
+            long delta = mLastTime < 0 ? 0 : Math.max(0, time - mLastTime);
+            mLastTime = time;
+            mOut.writeByte(type);
+            writeVarint(delta);
+        }
+
+        private void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                mOut.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            mOut.writeByte((int) value);
+        }
+
+        public void flush() throws IOException {
+            mOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mOut.close();
+        }
+    }
+
+    public static final class Reader {
+
+        private final DataInputStream mIn;
+        private final List<String> mKeyMapNames;
+        // Reused for every motion record
+        private final JoystickBatch mBatch = new JoystickBatch(16);
+        private long mTime = 0;
+
+        public Reader(InputStream in) throws IOException {
+            mIn = new DataInputStream(in);
+            if (mIn.readInt() != MAGIC) {
+                throw new IOException("Not an input recording");
+            }
+            int version = mIn.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported recording version " + version);
+            }
+            int count = mIn.readUnsignedByte();
+            List<String> names = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                names.add(mIn.readUTF());
+            }
+            mKeyMapNames = Collections.unmodifiableList(names);
+        }
+
+        public List<String> getKeyMapNames() {
+            return mKeyMapNames;
+        }
+
+        /**
+         * Reads the next record and hands it to the visitor. Times start at 0.
+         *
+         * @return False at the end of the recording
+         */
+        public boolean next(Visitor visitor) throws IOException {
+            int type = mIn.read();
+            if (type < 0) return false;
+            mTime += readVarint();
+
+            switch (type) {
+                case TYPE_START_INPUT:
+                    visitor.onStartInput(mTime, mIn.readByte() != 0);
+                    break;
+                case TYPE_MOTION:
+                    int count = mIn.readUnsignedByte();
+                    mBatch.reset(count);
+                    for (int i = 0; i < count; i++) {
+                        mBatch.add(mTime - readVarint(), mIn.readFloat(), mIn.readFloat(), mIn.readFloat(),
+                                mIn.readFloat(), mIn.readFloat(), mIn.readFloat());
+                    }
+                    visitor.onMotion(mTime, mBatch);
+                    break;
+                case TYPE_KEY_DOWN:
+                    visitor.onKeyDown(mTime, (int) readVarint());
+                    break;
+                case TYPE_KEY_UP:
+                    visitor.onKeyUp(mTime, (int) readVarint());
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + type);
+            }
+            return true;
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = mIn.read();
+                if (b < 0) throw new EOFException("Truncated recording");
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Corrupt recording");
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays an {@link InputRecording} through the {@link InputEngine}, without Android,
+ * and counts what it typed. The buttons do what they do in the service: the face
+ * buttons type, R1 is space, L1 deletes and L2 is shift. R2 is enter when released
+ * without moving the stick, and a gesture otherwise. Held buttons are replayed as a
+ * single press, since repeating is up to the service.
+ * <p>
+ * Usage: InputReplayer &lt;recording&gt; &lt;keymap xml dir&gt; [runs]
+ */
+public final class InputReplayer implements InputRecording.Visitor, InputEngine.Listener {
+
+    private static final String SYMBOLS = "symbols";
+
+    /**
+     * What a replay typed, and how long it took
+     */
+    public static final class Result {
+        public long events;
+        public long characters;
+        public long deletes;
+        // Gestures aren't decoded, so their words aren't in the characters
+        public long gestures;
+        // The recorded session's length
+        public long sessionMillis;
+        // The time the replay took
+        public long replayNanos;
+
+        public double charactersPerSecond() {
+            return sessionMillis == 0 ? 0 : characters * 1000.0 / sessionMillis;
+        }
+
+        /**
+         * Words of 5 characters per minute, counting only the characters that weren't deleted
+         */
+        public double effectiveWordsPerMinute() {
+            if (sessionMillis == 0) return 0;
+            long kept = Math.max(0, characters - 2 * deletes);
+            return kept / 5.0 / (sessionMillis / 60000.0);
+        }
+
+        public double nanosPerEvent() {
+            return events == 0 ? 0 : (double) replayNanos / events;
+        }
+    }
+
+    private final InputEngine mEngine = new InputEngine(this);
+    private final KeyboardSet mKeyboards;
+    private Result mResult;
+
+    public InputReplayer(KeyboardSet keyboards) {
+        mKeyboards = keyboards;
+    }
+
+    /**
+     * Loads the keymaps a recording was made with
+     */
+    public static KeyboardSet loadKeyboards(List<String> names, File keyMapDir) throws IOException {
+        List<KeyMap> languages = new ArrayList<>();
+        KeyMap symbols = null;
+        for (String name : names) {
+            KeyMap keyMap = KeyMapXml.load(new File(keyMapDir, name + ".xml"));
+            if (name.equals(SYMBOLS)) {
+                symbols = keyMap;
+            } else {
+                languages.add(keyMap);
+            }
+        }
+        if (symbols == null) {
+            symbols = KeyMapXml.load(new File(keyMapDir, SYMBOLS + ".xml"));
+        }
+        return new KeyboardSet(languages, symbols);
+    }
+
+    /**
+     * Replays a whole recording, held in memory so reading it isn't measured
+     */
+    public Result replay(byte[] recording) throws IOException {
+        mResult = new Result();
+        mEngine.setKeyboards(mKeyboards);
+        mEngine.setShift(false);
+
+        InputRecording.Reader reader = new InputRecording.Reader(new ByteArrayInputStream(recording));
+        long start = System.nanoTime();
+        while (reader.next(this)) {
+            mResult.events++;
+        }
+        mResult.replayNanos = System.nanoTime() - start;
+        return mResult;
+    }
+
+    @Override
+    public void onStartInput(long time, boolean symbols) {
+        mResult.sessionMillis = time;
+        mEngine.startInput(symbols);
+    }
+
+    @Override
+    public void onMotion(long time, JoystickBatch batch) {
+        mResult.sessionMillis = time;
+        mEngine.processJoystickBatch(batch);
+    }
+
+    @Override
+    public void onKeyDown(long time, int keyCode) {
+        mResult.sessionMillis = time;
+        switch (keyCode) {
+            case GamepadKeys.KEYCODE_BUTTON_R1:
+                mResult.characters++;
+                break;
+            case GamepadKeys.KEYCODE_BUTTON_R2:
+                mEngine.startGesture(time);
+                break;
+            case GamepadKeys.KEYCODE_BUTTON_L1:
+                mResult.deletes++;
+                break;
+            case GamepadKeys.KEYCODE_BUTTON_L2:
+                mEngine.setShift(true);
+                break;
+            default:
+                String key = mEngine.pressButton(keyCode);
+                if (key != null) {
+                    mResult.characters += key.codePointCount(0, key.length());
+                }
+        }
+    }
+
+    @Override
+    public void onKeyUp(long time, int keyCode) {
+        mResult.sessionMillis = time;
+        if (keyCode == GamepadKeys.KEYCODE_BUTTON_L2) {
+            mEngine.setShift(false);
+        } else if (keyCode == GamepadKeys.KEYCODE_BUTTON_R2 && mEngine.isGesturing()) {
+            if (mEngine.finishGesture(time).isTap()) {
+                mResult.characters++;
+            } else {
+                mResult.gestures++;
+            }
+        }
+    }
+
+    @Override
+    public void onStickPositionChanged(int stickPosition) {
+    }
+
+    @Override
+    public void onKeyMapChanged(KeyMap keyMap, boolean shift) {
+    }
+
+    @Override
+    public void onCursorDirectionChanged(int direction, int keyCode) {
+    }
+
+    @Override
+    public void onAcceptCandidate() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: InputReplayer <recording> <keymap xml dir> [runs]");
+            System.exit(2);
+        }
+        byte[] recording = Files.readAllBytes(new File(args[0]).toPath());
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        List<String> names = new InputRecording.Reader(new ByteArrayInputStream(recording)).getKeyMapNames();
+        InputReplayer replayer = new InputReplayer(loadKeyboards(names, new File(args[1])));
+
+        // The first runs warm up the JIT, the best of the rest is the cost
+        Result best = null;
+        for (int i = 0; i < runs; i++) {
+            Result result = replayer.replay(recording);
+            if (best == null || result.replayNanos < best.replayNanos) best = result;
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%d events, %d characters, %d deletes, %d gestures in %.1f s",
+                best.events, best.characters, best.deletes, best.gestures, best.sessionMillis / 1000.0));
+        System.out.println(String.format(Locale.ROOT, "%.2f characters/s, %.1f effective WPM",
+                best.charactersPerSecond(), best.effectiveWordsPerMinute()));
+        System.out.println(String.format(Locale.ROOT, "%.1f ns/event (best of %d replays)",
+                best.nanosPerEvent(), runs));
+    }
+}
@@ -0,0 +1,67 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+/**
+ * A reusable buffer of joystick samples, in the order they happened. A MotionEvent
+ * can batch several historical samples; they are copied here so the engine can walk
+ * every one of them without allocating per sample. Each sample keeps its event time.
+ */
+public class JoystickBatch {
+
+    public static final int AXIS_X = 0;
+    public static final int AXIS_Y = 1;
+    public static final int AXIS_HAT_X = 2;
+    public static final int AXIS_HAT_Y = 3;
+    public static final int AXIS_RIGHT_X = 4;
+    public static final int AXIS_RIGHT_Y = 5;
+    public static final int AXIS_COUNT = 6;
+
+    private float[] mSamples;
+    private long[] mTimes;
+    private int mSize = 0;
+
+    public JoystickBatch(int initialCapacity) {
+        mSamples = new float[Math.max(1, initialCapacity) * AXIS_COUNT];
+        mTimes = new long[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * Empties the batch and makes sure it can hold sampleCount samples. The buffer
+     * only grows, so once it has seen the biggest batch there are no more allocations.
+     */
+    public void reset(int sampleCount) {
+        if (sampleCount * AXIS_COUNT > mSamples.length) {
+            mSamples = new float[sampleCount * AXIS_COUNT];
+            mTimes = new long[sampleCount];
+        }
+        mSize = 0;
+    }
+
+    /**
+     * Appends a sample. The capacity must have been reserved with {@link #reset(int)}.
+     *
+     * @param time The sample's event time, in milliseconds
+     */
+    public void add(long time, float x, float y, float hatX, float hatY, float rightX, float rightY) {
+        mTimes[mSize] = time;
+        int offset = mSize * AXIS_COUNT;
+        mSamples[offset + AXIS_X] = x;
+        mSamples[offset + AXIS_Y] = y;
+        mSamples[offset + AXIS_HAT_X] = hatX;
+        mSamples[offset + AXIS_HAT_Y] = hatY;
+        mSamples[offset + AXIS_RIGHT_X] = rightX;
+        mSamples[offset + AXIS_RIGHT_Y] = rightY;
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public float get(int sample, int axis) {
+        return mSamples[sample * AXIS_COUNT + axis];
+    }
+
+    public long getTime(int sample) {
+        return mTimes[sample];
+    }
+}
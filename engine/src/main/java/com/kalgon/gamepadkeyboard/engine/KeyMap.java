@@ -0,0 +1,106 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import java.util.Locale;
+
+/**
+ * A keymap: the text typed by each stick position (0-8) and face button (A, B, X, Y),
+ * with and without shift. A key can output any text: a letter, a supplementary character
+ * such as an emoji, or a short snippet.
+ * <p>
+ * All the outputs are resolved when the keymap is built, so {@link #getKey} is a plain
+ * array lookup that never allocates.
+ */
+public class KeyMap {
+
+    public static final int STICK_POSITIONS = 9;
+    public static final int BUTTONS = 4;
+    public static final int SHIFT_STATES = 2;
+    public static final int OUTPUTS = STICK_POSITIONS * BUTTONS * SHIFT_STATES;
+
+    // The longest text a single key may output
+    public static final int MAX_OUTPUT_LENGTH = 64;
+
+    private final String mName;
+    private final String[] mOutputs;
+
+    /**
+     * @param name    The keymap's name, which is also the name of its language
+     * @param outputs The text of every key, indexed by {@link #outputIndex}
+     */
+    public KeyMap(String name, String[] outputs) {
+        if (outputs.length != OUTPUTS) {
+            throw new IllegalArgumentException("A keymap must have " + OUTPUTS + " outputs");
+        }
+        for (String output : outputs) {
+            if (output == null || output.isEmpty()) {
+                throw new IllegalArgumentException("Every key must have an output");
+            }
+        }
+        mName = name;
+        mOutputs = outputs.clone();
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public static int outputIndex(int stickPosition, int buttonIndex, boolean shift) {
+        return (stickPosition * BUTTONS + buttonIndex) * SHIFT_STATES + (shift ? 1 : 0);
+    }
+
+    /**
+     * The shifted output of a key that doesn't define one
+     */
+    public static String defaultShiftedOutput(String output) {
+        return output.toUpperCase(Locale.ROOT);
+    }
+
+    public int keyCodeToButtonIndex(int keyCode) {
+        switch (keyCode) {
+            case GamepadKeys.KEYCODE_BUTTON_A:
+                return 0;
+            case GamepadKeys.KEYCODE_BUTTON_B:
+                return 1;
+            case GamepadKeys.KEYCODE_BUTTON_X:
+                return 2;
+            case GamepadKeys.KEYCODE_BUTTON_Y:
+                return 3;
+        }
+        throw new IllegalArgumentException("Keycode not supported");
+    }
+
+    public String getKey(int stickPosition, int buttonIndex) {
+        return getKey(stickPosition, buttonIndex, false);
+    }
+
+    public String getKey(int stickPosition, int buttonIndex, boolean shift) {
+        return mOutputs[outputIndex(stickPosition, buttonIndex, shift)];
+    }
+
+    String getOutput(int index) {
+        return mOutputs[index];
+    }
+
+    /**
+     * Finds the letters typed by single letter keys without shift (the dictionaries are
+     * lower case), each once, at its first key in stick position then button order. The
+     * letter models build on this.
+     *
+     * @param positions Receives the stick position of each letter, in the same order. At
+     *                  least STICK_POSITIONS * BUTTONS long.
+     * @return The letters, empty if there are none
+     */
+    public String findLetters(int[] positions) {
+        StringBuilder letters = new StringBuilder();
+        for (int i = 0; i < STICK_POSITIONS; i++) {
+            for (int b = 0; b < BUTTONS; b++) {
+                String key = getKey(i, b, false);
+                if (key.length() == 1 && Character.isLetter(key.charAt(0)) && letters.indexOf(key) < 0) {
+                    positions[letters.length()] = i;
+                    letters.append(key);
+                }
+            }
+        }
+        return letters.toString();
+    }
+}
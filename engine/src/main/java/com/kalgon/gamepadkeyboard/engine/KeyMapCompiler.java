@@ -0,0 +1,91 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Build step: validates every keymap XML in a directory and compiles it to the
+ * {@link KeyMapFormat}, and generates the KeyMapRegistry class listing them, so the
+ * app never parses XML or looks up resources by name.
+ * <p>
+ * Usage: KeyMapCompiler &lt;xml dir&gt; &lt;assets output dir&gt; &lt;java output dir&gt;
+ */
+public final class KeyMapCompiler {
+
+    public static final String ASSETS_DIR = "keymaps";
+    private static final String REGISTRY_PACKAGE = "com.kalgon.gamepadkeyboard";
+    private static final String REGISTRY_CLASS = "KeyMapRegistry";
+
+    private KeyMapCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: KeyMapCompiler <xml dir> <assets output dir> <java output dir>");
+            System.exit(2);
+        }
+        File xmlDir = new File(args[0]);
+        File assetsDir = new File(new File(args[1]), ASSETS_DIR);
+        File javaDir = new File(new File(args[2]), REGISTRY_PACKAGE.replace('.', File.separatorChar));
+
+        File[] xmlFiles = xmlDir.listFiles((dir, name) -> name.endsWith(".xml"));
+        if (xmlFiles == null || xmlFiles.length == 0) {
+            throw new IOException("No keymaps found in " + xmlDir);
+        }
+        Arrays.sort(xmlFiles);
+
+        mkdirs(assetsDir);
+        mkdirs(javaDir);
+
+        String[] names = new String[xmlFiles.length];
+        for (int i = 0; i < xmlFiles.length; i++) {
+            String fileName = xmlFiles[i].getName();
+            names[i] = fileName.substring(0, fileName.length() - ".xml".length());
+
+            KeyMap keyMap = KeyMapXml.load(xmlFiles[i]);
+            try (OutputStream out = new FileOutputStream(new File(assetsDir, names[i] + KeyMapFormat.EXTENSION))) {
+                KeyMapFormat.write(keyMap, out);
+            }
+        }
+
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(javaDir, REGISTRY_CLASS + ".java")),
+                StandardCharsets.UTF_8)) {
+            out.write(generateRegistry(names));
+        }
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+    }
+
+    private static String generateRegistry(String[] names) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(REGISTRY_PACKAGE).append(";\n\n");
+        sb.append("/**\n * The compiled keymaps. Generated by KeyMapCompiler - do not edit.\n */\n");
+        sb.append("public final class ").append(REGISTRY_CLASS).append(" {\n\n");
+        sb.append("    public static final String[] NAMES = {");
+        for (int i = 0; i < names.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append('"').append(names[i]).append('"');
+        }
+        sb.append("};\n\n");
+        sb.append("    private ").append(REGISTRY_CLASS).append("() {\n    }\n\n");
+        sb.append("    /**\n     * @return The asset holding the compiled keymap, or null if there is no such keymap\n     */\n");
+        sb.append("    public static String assetPath(String name) {\n");
+        sb.append("        switch (name) {\n");
+        for (String name : names) {
+            sb.append("            case \"").append(name).append("\":\n");
+            sb.append("                return \"").append(ASSETS_DIR).append('/').append(name)
+                    .append(KeyMapFormat.EXTENSION).append("\";\n");
+        }
+        sb.append("        }\n        return null;\n    }\n}\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The compiled binary form of a keymap, so the app loads a keymap with a single read
+ * instead of parsing XML. The key outputs are stored once each in a packed pool of
+ * UTF-16 chars and every key points into it. All values are big endian:
+ * <pre>
+ * int   magic ("GKMP")
+ * int   version
+ * char  pool length
+ * char  pool[pool length]
+ * char  offset, length    for each of KeyMap.OUTPUTS keys, in KeyMap.outputIndex order
+ * </pre>
+ */
+public final class KeyMapFormat {
+
+    public static final int MAGIC = 0x474B4D50;
+    public static final int VERSION = 2;
+    public static final String EXTENSION = ".kmap";
+
+    private static final int MAX_POOL_LENGTH = 0xFFFF;
+
+    private KeyMapFormat() {
+    }
+
+    public static void write(KeyMap keyMap, OutputStream out) throws IOException {
+        StringBuilder pool = new StringBuilder();
+        Map<String, Integer> offsets = new HashMap<>();
+        int[] keyOffsets = new int[KeyMap.OUTPUTS];
+        for (int i = 0; i < KeyMap.OUTPUTS; i++) {
+            String output = keyMap.getOutput(i);
+            Integer offset = offsets.get(output);
+            if (offset == null) {
+                offset = pool.length();
+                offsets.put(output, offset);
+                pool.append(output);
+            }
+            keyOffsets[i] = offset;
+        }
+        if (pool.length() > MAX_POOL_LENGTH) {
+            throw new IOException("Keymap text is too long");
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeChar(pool.length());
+        data.writeChars(pool.toString());
+        for (int i = 0; i < KeyMap.OUTPUTS; i++) {
+            data.writeChar(keyOffsets[i]);
+            data.writeChar(keyMap.getOutput(i).length());
+        }
+        data.flush();
+    }
+
+    public static KeyMap read(String name, ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 10 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a compiled keymap");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported keymap version " + version);
+        }
+        int poolLength = buffer.getChar();
+        if (buffer.remaining() < (poolLength + KeyMap.OUTPUTS * 2) * 2) {
+            throw new IOException("Truncated keymap");
+        }
+        char[] pool = new char[poolLength];
+        buffer.asCharBuffer().get(pool);
+        buffer.position(buffer.position() + poolLength * 2);
+
+        // Keys with the same text share the same String
+        Map<Integer, String> strings = new HashMap<>();
+        String[] outputs = new String[KeyMap.OUTPUTS];
+        for (int i = 0; i < KeyMap.OUTPUTS; i++) {
+            int offset = buffer.getChar();
+            int length = buffer.getChar();
+            if (offset + length > poolLength) {
+                throw new IOException("Corrupt keymap");
+            }
+            Integer key = offset << 16 | length;
+            String output = strings.get(key);
+            if (output == null) {
+                output = new String(pool, offset, length);
+                strings.put(key, output);
+            }
+            outputs[i] = output;
+        }
+        return new KeyMap(name, outputs);
+    }
+
+    public static KeyMap read(String name, byte[] bytes) throws IOException {
+        return read(name, ByteBuffer.wrap(bytes));
+    }
+}
@@ -0,0 +1,136 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Reads and validates a keymap XML file (the GamepadKeyboard format) on a plain JVM.
+ * Used at build time by the {@link KeyMapCompiler}, never on the device.
+ */
+public final class KeyMapXml {
+
+    private static final List<String> BUTTON_LETTER_ORDER = Arrays.asList("A", "B", "X", "Y");
+    public static final String STICK_DIRECTION = "StickDirection";
+    public static final String GAMEPAD_KEYBOARD = "GamepadKeyboard";
+
+    private KeyMapXml() {
+    }
+
+    public static KeyMap load(File file) throws IOException {
+        try {
+            String fileName = file.getName();
+            String name = fileName.endsWith(".xml") ? fileName.substring(0, fileName.length() - ".xml".length()) : fileName;
+            return new KeyMap(name, parse(file));
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String[] parse(File file) throws IOException, SAXException, ParserConfigurationException {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        Element root = document.getDocumentElement();
+        if (!root.getTagName().equals(GAMEPAD_KEYBOARD)) {
+            throw new IllegalArgumentException("Root tag must be " + GAMEPAD_KEYBOARD + ", found " + root.getTagName());
+        }
+
+        String[] outputs = new String[KeyMap.OUTPUTS];
+        boolean[] seenPositions = new boolean[KeyMap.STICK_POSITIONS];
+
+        for (Element direction : childElements(root)) {
+            if (!direction.getTagName().equals(STICK_DIRECTION)) {
+                throw new IllegalArgumentException("Unexpected tag found: " + direction.getTagName());
+            }
+            int stickPos = parsePosition(direction.getAttribute("position"));
+            if (seenPositions[stickPos]) {
+                throw new IllegalArgumentException("Stick position " + stickPos + " is defined twice");
+            }
+            seenPositions[stickPos] = true;
+
+            boolean[] seenButtons = new boolean[KeyMap.BUTTONS];
+            for (Element button : childElements(direction)) {
+                int buttonIndex = BUTTON_LETTER_ORDER.indexOf(button.getTagName());
+                if (buttonIndex < 0) {
+                    throw new IllegalArgumentException("Unexpected tag found: " + button.getTagName());
+                }
+                if (seenButtons[buttonIndex]) {
+                    throw new IllegalArgumentException("Button " + button.getTagName() + " is defined twice in position " + stickPos);
+                }
+                seenButtons[buttonIndex] = true;
+
+                // Without an alt, shift gives the upper case
+                String main = validOutput(button.getTextContent(), stickPos, button);
+                String alt = button.hasAttribute("alt") ?
+                        validOutput(button.getAttribute("alt"), stickPos, button) : KeyMap.defaultShiftedOutput(main);
+                outputs[KeyMap.outputIndex(stickPos, buttonIndex, false)] = main;
+                outputs[KeyMap.outputIndex(stickPos, buttonIndex, true)] = alt;
+            }
+            for (int b = 0; b < KeyMap.BUTTONS; b++) {
+                if (!seenButtons[b]) {
+                    throw new IllegalArgumentException("Button " + BUTTON_LETTER_ORDER.get(b) + " is missing in position " + stickPos);
+                }
+            }
+        }
+
+        for (int i = 0; i < KeyMap.STICK_POSITIONS; i++) {
+            if (!seenPositions[i]) {
+                throw new IllegalArgumentException("Stick position " + i + " is missing");
+            }
+        }
+        return outputs;
+    }
+
+    private static int parsePosition(String position) {
+        try {
+            int stickPos = Integer.parseInt(position);
+            if (stickPos >= 0 && stickPos < KeyMap.STICK_POSITIONS) return stickPos;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid stick position: \"" + position + "\"");
+    }
+
+    private static String validOutput(String text, int stickPos, Element button) {
+        if (text.isEmpty() || text.length() > KeyMap.MAX_OUTPUT_LENGTH) {
+            throw new IllegalArgumentException(String.format("Expected 1 to %d characters in %s of position %d, found \"%s\"",
+                    KeyMap.MAX_OUTPUT_LENGTH, button.getTagName(), stickPos, text));
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean paired = Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1));
+            if (paired) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                throw new IllegalArgumentException(String.format("Broken surrogate pair in %s of position %d",
+                        button.getTagName(), stickPos));
+            }
+        }
+        return text;
+    }
+
+    private static Element[] childElements(Element parent) {
+        NodeList children = parent.getChildNodes();
+        int count = 0;
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i).getNodeType() == Node.ELEMENT_NODE) count++;
+        }
+        Element[] elements = new Element[count];
+        count = 0;
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i).getNodeType() == Node.ELEMENT_NODE) elements[count++] = (Element) children.item(i);
+        }
+        return elements;
+    }
+}
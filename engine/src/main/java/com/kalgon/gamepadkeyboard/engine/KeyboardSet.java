@@ -0,0 +1,42 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The keymaps the user can switch between: the selected languages and the symbols.
+ * Immutable, so a new set can be built off the main thread and published by swapping
+ * a single reference.
+ */
+public final class KeyboardSet {
+
+    public static final KeyboardSet EMPTY = new KeyboardSet(Collections.<KeyMap>emptyList(), null);
+
+    private final List<KeyMap> mLanguages;
+    private final KeyMap mSymbols;
+
+    public KeyboardSet(List<KeyMap> languages, KeyMap symbols) {
+        mLanguages = Collections.unmodifiableList(new ArrayList<>(languages));
+        mSymbols = symbols;
+    }
+
+    public int size() {
+        return mLanguages.size();
+    }
+
+    public KeyMap get(int index) {
+        return mLanguages.get(index);
+    }
+
+    public List<KeyMap> getLanguages() {
+        return mLanguages;
+    }
+
+    /**
+     * @return The symbols keymap, or null if it isn't loaded
+     */
+    public KeyMap getSymbols() {
+        return mSymbols;
+    }
+}
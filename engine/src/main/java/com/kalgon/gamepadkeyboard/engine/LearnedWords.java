@@ -0,0 +1,105 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The words the user typed, with how many times, so they can be completed too.
+ * Bounded: when full, the least recently used word is forgotten.
+ */
+public class LearnedWords {
+
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private final LinkedHashMap<String, Integer> mCounts;
+    private boolean mChanged = false;
+
+    public LearnedWords() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LearnedWords(final int capacity) {
+        mCounts = new LinkedHashMap<String, Integer>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized void learn(String word) {
+        String key = word.toLowerCase(Locale.ROOT);
+        Integer count = mCounts.get(key);
+        mCounts.put(key, count == null ? 1 : count + 1);
+        mChanged = true;
+    }
+
+    public synchronized int getCount(String word) {
+        Integer count = mCounts.get(word);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Calls the visitor for every learned word starting with the lower case prefix
+     */
+    public synchronized void forEachWithPrefix(CharSequence prefix, WordVisitor visitor) {
+        for (Map.Entry<String, Integer> entry : mCounts.entrySet()) {
+            String word = entry.getKey();
+            if (startsWith(word, prefix)) {
+                visitor.visit(word, entry.getValue());
+            }
+        }
+    }
+
+    public interface WordVisitor {
+        void visit(String word, int count);
+    }
+
+    private static boolean startsWith(String word, CharSequence prefix) {
+        if (word.length() < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (word.charAt(i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether anything was learned since the last read or write
+     */
+    public synchronized boolean hasChanged() {
+        return mChanged;
+    }
+
+    /**
+     * Writes "word\tcount" lines, least recently used first, so reading them back keeps the order
+     */
+    public synchronized void write(Writer out) throws IOException {
+        for (Map.Entry<String, Integer> entry : mCounts.entrySet()) {
+            out.write(entry.getKey());
+            out.write('\t');
+            out.write(Integer.toString(entry.getValue()));
+            out.write('\n');
+        }
+        mChanged = false;
+    }
+
+    public synchronized void read(Reader in) throws IOException {
+        BufferedReader lines = new BufferedReader(in);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            int tab = line.indexOf('\t');
+            if (tab <= 0) continue;
+            try {
+                mCounts.put(line.substring(0, tab), Integer.parseInt(line.substring(tab + 1)));
+            } catch (NumberFormatException e) {
+                // Skip the broken line
+            }
+        }
+        mChanged = false;
+    }
+}
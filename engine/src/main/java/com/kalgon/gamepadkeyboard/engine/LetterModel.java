@@ -0,0 +1,160 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+/**
+ * Predicts the stick positions of the next letter from the last two letters of the
+ * word, so the keyboard can hint at them.
+ * <p>
+ * Built once per language from the dictionary and the keymap. Everything is reduced
+ * to a table of the best positions for each context, with the contexts seen too rarely
+ * falling back to the last letter alone, so a prediction is a single array read.
+ */
+public final class LetterModel {
+
+    /**
+     * How many positions are hinted
+     */
+    public static final int HINTS = 2;
+
+    // Below this many samples, a two letter context falls back to the last letter
+    private static final double MIN_CONTEXT_WEIGHT = 4;
+
+    // The dictionary keeps log frequencies: 2^(f/32) turns them back into weights
+    // roughly proportional to how often the words are typed
+    private static final double FREQUENCY_LOG_STEP = 32;
+
+    // Letters are numbered from 1, 0 stands for the start of the word or any other character
+    private final char mFirstChar;
+    private final byte[] mLetterIndex;
+    private final int mSize;
+
+    // For each (letter before last, last letter): a bit mask of the best next positions
+    private final short[] mHints;
+
+    private LetterModel(char firstChar, byte[] letterIndex, int size, short[] hints) {
+        mFirstChar = firstChar;
+        mLetterIndex = letterIndex;
+        mSize = size;
+        mHints = hints;
+    }
+
+    /**
+     * @param dictionary The language's words and frequencies
+     * @param keyMap     The language's keymap, which says where every letter is
+     * @return Null if the keymap has no letters
+     */
+    public static LetterModel build(Dictionary dictionary, KeyMap keyMap) {
+        // Where every single letter key is
+        int[] keyPositions = new int[KeyMap.STICK_POSITIONS * KeyMap.BUTTONS];
+        String letters = keyMap.findLetters(keyPositions);
+        if (letters.isEmpty()) return null;
+
+        char first = Character.MAX_VALUE;
+        char last = 0;
+        for (int i = 0; i < letters.length(); i++) {
+            first = (char) Math.min(first, letters.charAt(i));
+            last = (char) Math.max(last, letters.charAt(i));
+        }
+        // Index 0 is for anything but a letter. A byte leaves room for 127 letters, more
+        // than any alphabet we support.
+        byte[] letterIndex = new byte[last - first + 1];
+        int[] letterPositions = new int[letters.length() + 1];
+        for (int i = 0; i < letters.length(); i++) {
+            letterIndex[letters.charAt(i) - first] = (byte) (i + 1);
+            letterPositions[i + 1] = keyPositions[i];
+        }
+
+        int size = letters.length() + 1;
+        LetterModel model = new LetterModel(first, letterIndex, size, new short[size * size]);
+        double[] trigrams = new double[size * size * KeyMap.STICK_POSITIONS];
+        char[] word = new char[WordCompleter.MAX_WORD_LENGTH];
+        model.count(dictionary, dictionary.getRoot(), word, 0, letterPositions, trigrams);
+        model.fillHints(trigrams);
+        return model;
+    }
+
+    /**
+     * Adds every word below node to the counts of (letter before last, last letter, next position)
+     */
+    private void count(Dictionary dictionary, int node, char[] word, int length, int[] letterPositions,
+                       double[] trigrams) {
+        int frequency = dictionary.getFrequency(node);
+        if (frequency > 0) {
+            double weight = Math.pow(2, frequency / FREQUENCY_LOG_STEP);
+            int before = 0;
+            int last = 0;
+            for (int i = 0; i < length; i++) {
+                int letter = letterIndex(word[i]);
+                if (letter != 0) {
+                    trigrams[(before * mSize + last) * KeyMap.STICK_POSITIONS + letterPositions[letter]] += weight;
+                }
+                before = last;
+                last = letter;
+            }
+        }
+        if (length == word.length) return;
+
+        int childCount = dictionary.getChildCount(node);
+        for (int i = 0; i < childCount; i++) {
+            word[length] = dictionary.getChildLabel(node, i);
+            count(dictionary, dictionary.getChild(node, i), word, length + 1, letterPositions, trigrams);
+        }
+    }
+
+    private void fillHints(double[] trigrams) {
+        // The last letter alone: the sum over every letter before it
+        double[] bigrams = new double[mSize * KeyMap.STICK_POSITIONS];
+        for (int before = 0; before < mSize; before++) {
+            for (int last = 0; last < mSize; last++) {
+                for (int p = 0; p < KeyMap.STICK_POSITIONS; p++) {
+                    bigrams[last * KeyMap.STICK_POSITIONS + p] +=
+                            trigrams[(before * mSize + last) * KeyMap.STICK_POSITIONS + p];
+                }
+            }
+        }
+
+        for (int before = 0; before < mSize; before++) {
+            for (int last = 0; last < mSize; last++) {
+                int context = before * mSize + last;
+                double total = 0;
+                for (int p = 0; p < KeyMap.STICK_POSITIONS; p++) {
+                    total += trigrams[context * KeyMap.STICK_POSITIONS + p];
+                }
+                mHints[context] = total >= MIN_CONTEXT_WEIGHT
+                        ? bestPositions(trigrams, context * KeyMap.STICK_POSITIONS)
+                        : bestPositions(bigrams, last * KeyMap.STICK_POSITIONS);
+            }
+        }
+    }
+
+    private static short bestPositions(double[] weights, int offset) {
+        int mask = 0;
+        for (int hint = 0; hint < HINTS; hint++) {
+            int best = -1;
+            for (int p = 0; p < KeyMap.STICK_POSITIONS; p++) {
+                if ((mask & (1 << p)) == 0 && weights[offset + p] > 0
+                        && (best < 0 || weights[offset + p] > weights[offset + best])) {
+                    best = p;
+                }
+            }
+            if (best < 0) break;
+            mask |= 1 << best;
+        }
+        return (short) mask;
+    }
+
+    private int letterIndex(char c) {
+        int i = c - mFirstChar;
+        return i >= 0 && i < mLetterIndex.length ? mLetterIndex[i] : 0;
+    }
+
+    /**
+     * @param word The word typed so far, empty at the start of a word
+     * @return A bit mask of the likely positions of the next letter (bit n for position n)
+     */
+    public int predict(CharSequence word) {
+        int length = word.length();
+        int last = length > 0 ? letterIndex(Character.toLowerCase(word.charAt(length - 1))) : 0;
+        int before = length > 1 ? letterIndex(Character.toLowerCase(word.charAt(length - 2))) : 0;
+        return mHints[before * mSize + last];
+    }
+}
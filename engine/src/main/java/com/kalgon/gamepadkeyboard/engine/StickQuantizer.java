@@ -0,0 +1,129 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+/**
+ * Turns stick coordinates into a stick position: 0 when centered, otherwise 1 for
+ * 12 o'clock advancing clockwise every eighth, like the keymap positions.
+ * <p>
+ * The sector is read from a lookup table over the stick's square, so there's no trig
+ * per event. A radial deadzone decides the center, and both the deadzone edge and the
+ * sector borders have hysteresis, so a stick resting on a border doesn't flicker
+ * between two positions.
+ */
+public class StickQuantizer {
+
+    public static final float DEFAULT_DEADZONE = 0.2f;
+    public static final float DEFAULT_DEADZONE_MARGIN = 0.05f;
+    public static final float DEFAULT_HYSTERESIS_DEGREES = 6f;
+
+    // Lookup table cells per axis, covering -1..1
+    private static final int RESOLUTION = 128;
+    private static final float HALF_RESOLUTION = RESOLUTION / 2f;
+
+    private final byte[] mSectorTable = new byte[RESOLUTION * RESOLUTION];
+    private final int mPositionStep;
+
+    // Unit vectors pointing at the middle of each position (index 0 unused)
+    private final float[] mCenterX = new float[9];
+    private final float[] mCenterY = new float[9];
+
+    private final float mEnterSquared;
+    private final float mExitSquared;
+    private final float mStayCosSquared;
+
+    private int mPosition = 0;
+
+    /**
+     * @param sectors           8 for all directions, or 4 for up, right, down and left only
+     *                          (positions 1, 3, 5 and 7)
+     * @param deadzone          The stick is centered below this distance from the middle
+     * @param deadzoneMargin    How much further the stick has to go to leave the center
+     * @param hysteresisDegrees How far past a border the stick has to go to change sectors
+     */
+    public StickQuantizer(int sectors, float deadzone, float deadzoneMargin, float hysteresisDegrees) {
+        if (sectors != 8 && sectors != 4) {
+            throw new IllegalArgumentException("Only 8 or 4 sectors are supported");
+        }
+        double sectorWidth = 360.0 / sectors;
+        if (hysteresisDegrees < 0 || hysteresisDegrees >= sectorWidth / 2) {
+            throw new IllegalArgumentException("Hysteresis must be less than half a sector");
+        }
+        mPositionStep = 8 / sectors;
+
+        for (int iy = 0; iy < RESOLUTION; iy++) {
+            for (int ix = 0; ix < RESOLUTION; ix++) {
+                double x = (ix + 0.5) / HALF_RESOLUTION - 1;
+                double y = (iy + 0.5) / HALF_RESOLUTION - 1;
+                // Clockwise from 12 o'clock. The Y axis points down.
+                double angle = Math.toDegrees(Math.atan2(x, -y));
+                int sector = (int) Math.round(angle / sectorWidth);
+                sector = (sector % sectors + sectors) % sectors;
+                mSectorTable[iy * RESOLUTION + ix] = (byte) (1 + sector * mPositionStep);
+            }
+        }
+
+        for (int position = 1; position < 9; position++) {
+            double angle = Math.toRadians((position - 1) * 45.0);
+            mCenterX[position] = (float) Math.sin(angle);
+            mCenterY[position] = (float) -Math.cos(angle);
+        }
+
+        mExitSquared = deadzone * deadzone;
+        mEnterSquared = (deadzone + deadzoneMargin) * (deadzone + deadzoneMargin);
+        double stayCos = Math.cos(Math.toRadians(sectorWidth / 2 + hysteresisDegrees));
+        mStayCosSquared = (float) (stayCos * stayCos);
+    }
+
+    public static StickQuantizer eightWay() {
+        return new StickQuantizer(8, DEFAULT_DEADZONE, DEFAULT_DEADZONE_MARGIN, DEFAULT_HYSTERESIS_DEGREES);
+    }
+
+    public static StickQuantizer fourWay() {
+        return new StickQuantizer(4, DEFAULT_DEADZONE, DEFAULT_DEADZONE_MARGIN, DEFAULT_HYSTERESIS_DEGREES);
+    }
+
+    public int getPosition() {
+        return mPosition;
+    }
+
+    public void reset() {
+        mPosition = 0;
+    }
+
+    /**
+     * @return The new stick position, which is also kept as the current one
+     */
+    public int quantize(float x, float y) {
+        final float radiusSquared = x * x + y * y;
+        if (mPosition == 0 ? radiusSquared <= mEnterSquared : radiusSquared < mExitSquared) {
+            mPosition = 0;
+            return 0;
+        }
+
+        final int sector = lookup(x, y);
+        if (sector != mPosition && mPosition != 0 && isWithinCurrent(x, y, radiusSquared)) {
+            return mPosition;
+        }
+        mPosition = sector;
+        return sector;
+    }
+
+    private int lookup(float x, float y) {
+        int ix = (int) ((x + 1f) * HALF_RESOLUTION);
+        int iy = (int) ((y + 1f) * HALF_RESOLUTION);
+        if (ix < 0) ix = 0;
+        else if (ix >= RESOLUTION) ix = RESOLUTION - 1;
+        if (iy < 0) iy = 0;
+        else if (iy >= RESOLUTION) iy = RESOLUTION - 1;
+        return mSectorTable[iy * RESOLUTION + ix];
+    }
+
+    /**
+     * Whether the angle between (x, y) and the middle of the current position is
+     * within half a sector plus the hysteresis: cos(angle) = dot / radius, squared to
+     * avoid the square root.
+     */
+    private boolean isWithinCurrent(float x, float y, float radiusSquared) {
+        final float dot = x * mCenterX[mPosition] + y * mCenterY[mPosition];
+        return dot > 0 && dot * dot >= mStayCosSquared * radiusSquared;
+    }
+}
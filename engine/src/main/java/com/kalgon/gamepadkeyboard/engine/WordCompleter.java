@@ -0,0 +1,219 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+/**
+ * Follows the word being typed and offers the most frequent completions for it, from
+ * the language's {@link Dictionary} and the user's {@link LearnedWords}.
+ * <p>
+ * Typing a letter moves one step down the trie, and the search keeps its best results
+ * in preallocated buffers, pruning every subtree that can't beat them. Only the final
+ * candidate Strings are allocated.
+ */
+public class WordCompleter implements LearnedWords.WordVisitor {
+
+    public static final int MAX_WORD_LENGTH = 48;
+
+    // A learned word ranks with the dictionary's common words, and climbs with every use
+    private static final int LEARNED_BASE_SCORE = 160;
+    private static final int LEARNED_SCORE_PER_USE = 16;
+
+    // Shorter words are finished by the user, not learned
+    private static final int MIN_LEARNED_LENGTH = 2;
+
+    private Dictionary mDictionary = null;
+    private LearnedWords mLearnedWords = null;
+
+    // The word as typed, and lower-cased for the lookups
+    private final StringBuilder mWord = new StringBuilder(MAX_WORD_LENGTH);
+    private final StringBuilder mKey = new StringBuilder(MAX_WORD_LENGTH);
+    private int mNode = Dictionary.NO_NODE;
+
+    private final int mMaxResults;
+    private final char[][] mResults;
+    private final int[] mResultLengths;
+    private final int[] mResultScores;
+    private int mResultCount = 0;
+    private int mLearnedLimit = 0;
+    private final char[] mPath = new char[MAX_WORD_LENGTH];
+    // Spells each completion, so it's only copied once into its String
+    private final StringBuilder mCompletion = new StringBuilder(MAX_WORD_LENGTH);
+
+    public WordCompleter(int maxResults) {
+        mMaxResults = maxResults;
+        mResults = new char[maxResults][MAX_WORD_LENGTH];
+        mResultLengths = new int[maxResults];
+        mResultScores = new int[maxResults];
+    }
+
+    /**
+     * @param dictionary   The language's dictionary, or null for none
+     * @param learnedWords The language's learned words, or null for none
+     */
+    public void setLanguage(Dictionary dictionary, LearnedWords learnedWords) {
+        mDictionary = dictionary;
+        mLearnedWords = learnedWords;
+        reset();
+    }
+
+    public CharSequence getWord() {
+        return mWord;
+    }
+
+    public void reset() {
+        mWord.setLength(0);
+        mKey.setLength(0);
+        mNode = mDictionary == null ? Dictionary.NO_NODE : mDictionary.getRoot();
+    }
+
+    /**
+     * Follows committed text. Word characters extend the current word, anything else
+     * finishes it (and learns it).
+     */
+    public void append(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isWordChar(c)) {
+                if (mWord.length() >= MAX_WORD_LENGTH) {
+                    mNode = Dictionary.NO_NODE;
+                    continue;
+                }
+                char lower = Character.toLowerCase(c);
+                mWord.append(c);
+                mKey.append(lower);
+                if (mNode != Dictionary.NO_NODE) {
+                    mNode = mDictionary.findChild(mNode, lower);
+                }
+            } else {
+                finishWord();
+            }
+        }
+    }
+
+    public void deleteBackward() {
+        int length = mWord.length();
+        if (length == 0) return;
+
+        int newLength = length - Character.charCount(Character.codePointBefore(mWord, length));
+        mWord.setLength(newLength);
+        mKey.setLength(newLength);
+        mNode = mDictionary == null ? Dictionary.NO_NODE : mDictionary.findPrefix(mKey);
+    }
+
+    private void finishWord() {
+        if (mLearnedWords != null && mKey.length() >= MIN_LEARNED_LENGTH) {
+            mLearnedWords.learn(mKey.toString());
+        }
+        reset();
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetter(c) || c == '\'' || Character.isSurrogate(c);
+    }
+
+    /**
+     * Fills out with the best completions of the current word, best first. A completion
+     * keeps the letters as the user typed them.
+     *
+     * @return The number of completions
+     */
+    public int complete(String[] out) {
+        mResultCount = 0;
+        if (mWord.length() == 0) return 0;
+
+        int limit = Math.min(out.length, mMaxResults);
+        if (limit == 0) return 0;
+        if (mNode != Dictionary.NO_NODE) {
+            mKey.getChars(0, mKey.length(), mPath, 0);
+            collect(mNode, mKey.length(), limit);
+        }
+        if (mLearnedWords != null) {
+            mLearnedLimit = limit;
+            mLearnedWords.forEachWithPrefix(mKey, this);
+        }
+
+        final int typed = mWord.length();
+        for (int i = 0; i < mResultCount; i++) {
+            mCompletion.setLength(0);
+            mCompletion.append(mWord).append(mResults[i], typed, mResultLengths[i] - typed);
+            out[i] = mCompletion.toString();
+        }
+        return mResultCount;
+    }
+
+    private void collect(int node, int depth, int limit) {
+        int frequency = mDictionary.getFrequency(node);
+        if (frequency > 0) {
+            offer(mPath, depth, frequency, limit);
+        }
+        if (depth >= MAX_WORD_LENGTH) return;
+
+        int childCount = mDictionary.getChildCount(node);
+        for (int i = 0; i < childCount; i++) {
+            int child = mDictionary.getChild(node, i);
+            // Nothing down there can make it into a full result list
+            if (mResultCount == limit && mDictionary.getMaxFrequency(child) <= mResultScores[limit - 1]) continue;
+
+            mPath[depth] = mDictionary.getChildLabel(node, i);
+            collect(child, depth + 1, limit);
+        }
+    }
+
+    @Override
+    public void visit(String word, int count) {
+        if (word.length() > MAX_WORD_LENGTH) return;
+        int score = Math.min(255, LEARNED_BASE_SCORE + LEARNED_SCORE_PER_USE * (count - 1));
+
+        // Already found in the dictionary: keep the better score
+        for (int i = 0; i < mResultCount; i++) {
+            if (equals(mResults[i], mResultLengths[i], word)) {
+                if (score > mResultScores[i]) {
+                    remove(i);
+                    break;
+                }
+                return;
+            }
+        }
+        word.getChars(0, word.length(), mPath, 0);
+        offer(mPath, word.length(), score, mLearnedLimit);
+    }
+
+    private static boolean equals(char[] chars, int length, String word) {
+        if (length != word.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (chars[i] != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void remove(int index) {
+        char[] removed = mResults[index];
+        for (int i = index; i < mResultCount - 1; i++) {
+            mResults[i] = mResults[i + 1];
+            mResultLengths[i] = mResultLengths[i + 1];
+            mResultScores[i] = mResultScores[i + 1];
+        }
+        mResultCount--;
+        mResults[mResultCount] = removed;
+    }
+
+    /**
+     * Inserts into the sorted results, dropping the worst one if they're full
+     */
+    private void offer(char[] word, int length, int score, int limit) {
+        if (mResultCount == limit && score <= mResultScores[limit - 1]) return;
+
+        int position = mResultCount < limit ? mResultCount : limit - 1;
+        // Reuse the buffer of the result that falls off
+        char[] buffer = mResults[position];
+        while (position > 0 && mResultScores[position - 1] < score) {
+            mResults[position] = mResults[position - 1];
+            mResultLengths[position] = mResultLengths[position - 1];
+            mResultScores[position] = mResultScores[position - 1];
+            position--;
+        }
+        System.arraycopy(word, 0, buffer, 0, length);
+        mResults[position] = buffer;
+        mResultLengths[position] = length;
+        mResultScores[position] = score;
+        if (mResultCount < limit) mResultCount++;
+    }
+}
@@ -0,0 +1,139 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how well the English gestures decode, with the app's keymap and word list
+ */
+public class GestureDecoderTest {
+
+    // Common words, gestured cleanly: straight from letter to letter at a steady pace
+    private static final String[] WORDS = {
+            "the", "people", "think", "that", "this", "thing", "would", "work", "through", "night",
+            "between", "water", "house", "because", "little", "world", "before", "should", "never", "right"};
+    // How many of WORDS decode to themselves first. Raise it when the decoder gets better.
+    private static final int MIN_FIRST = 14;
+
+    // Like a controller reporting every 4 ms, taking 16 ms from one letter to the next
+    private static final int SAMPLES_PER_MOVE = 4;
+    private static final long MOVE_MILLIS = 16;
+
+    private static KeyMap sKeyMap;
+    private static GestureDecoder sDecoder;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        File wordList = new File(System.getProperty("dictionary.dir", "../app/src/main/dictionaries"), "english.txt");
+        List<DictionaryFormat.Entry> entries;
+        try (Reader in = new InputStreamReader(new FileInputStream(wordList), StandardCharsets.UTF_8)) {
+            entries = DictionaryFormat.readWordList(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DictionaryFormat.write(entries, out);
+        sKeyMap = KeyMapXml.load(new File(System.getProperty("keymap.dir", "../app/src/main/keymaps"), "english.xml"));
+        sDecoder = GestureDecoder.build(Dictionary.open(ByteBuffer.wrap(out.toByteArray())), sKeyMap);
+    }
+
+    /**
+     * The engine's path for the word: the stick goes to the first letter, the gesture
+     * starts, and the stick glides through the other letters' positions without stopping
+     */
+    private static GesturePath gesture(String word) {
+        InputEngine engine = new InputEngine(new InputEngine.Listener() {
+            @Override
+            public void onStickPositionChanged(int stickPosition) {
+            }
+
+            @Override
+            public void onKeyMapChanged(KeyMap keyMap, boolean shift) {
+            }
+
+            @Override
+            public void onCursorDirectionChanged(int direction, int keyCode) {
+            }
+
+            @Override
+            public void onAcceptCandidate() {
+            }
+        });
+        engine.setKeyboards(new KeyboardSet(Collections.singletonList(sKeyMap), sKeyMap));
+        engine.startInput(false);
+
+        int[] positions = new int[KeyMap.STICK_POSITIONS * KeyMap.BUTTONS];
+        String letters = sKeyMap.findLetters(positions);
+        long time = 0;
+        float x = 0;
+        float y = 0;
+        for (int i = 0; i < word.length(); i++) {
+            int position = positions[letters.indexOf(word.charAt(i))];
+            float targetX = position == 0 ? 0 : (float) Math.sin(Math.toRadians((position - 1) * 45.0));
+            float targetY = position == 0 ? 0 : (float) -Math.cos(Math.toRadians((position - 1) * 45.0));
+            time += MOVE_MILLIS;
+            for (int s = 1; s <= SAMPLES_PER_MOVE; s++) {
+                float t = (float) s / SAMPLES_PER_MOVE;
+                engine.updateStickPosition(x + (targetX - x) * t, y + (targetY - y) * t,
+                        time - MOVE_MILLIS * (SAMPLES_PER_MOVE - s) / SAMPLES_PER_MOVE);
+            }
+            x = targetX;
+            y = targetY;
+            if (i == 0) engine.startGesture(time);
+        }
+        GesturePath path = new GesturePath();
+        path.copyFrom(engine.finishGesture(time));
+        return path;
+    }
+
+    @Test
+    public void cleanGesturesDecodeToTheirWord() {
+        String[] out = new String[3];
+        List<String> missed = new ArrayList<>();
+        for (String word : WORDS) {
+            int count = sDecoder.decode(gesture(word), out);
+            if (count == 0 || !out[0].equals(word)) missed.add(word);
+        }
+        int first = WORDS.length - missed.size();
+        assertTrue(first + " of " + WORDS.length + " gestures decoded to their word first, missed " + missed,
+                first >= MIN_FIRST);
+    }
+
+    @Test
+    public void resultsAreDistinct() {
+        String[] out = new String[8];
+        int count = sDecoder.decode(gesture("through"), out);
+        assertTrue(count > 1);
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < i; j++) {
+                assertFalse(out[i] + " is there twice", out[i].equals(out[j]));
+            }
+        }
+    }
+
+    @Test
+    public void nothingWithoutAPathOrRoom() {
+        assertEquals(0, sDecoder.decode(new GesturePath(), new String[3]));
+        assertEquals(0, sDecoder.decode(gesture("the"), new String[0]));
+    }
+
+    @Test
+    public void aTapIsNotAGesture() {
+        assertTrue(gesture("e").isTap());
+        assertFalse(gesture("the").isTap());
+    }
+}
@@ -0,0 +1,216 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InputRecordingTest {
+
+    /**
+     * Writes down every record it visits, one line each
+     */
+    private static class Transcript implements InputRecording.Visitor {
+        final List<String> lines = new ArrayList<>();
+
+        @Override
+        public void onStartInput(long time, boolean symbols) {
+            lines.add(time + " start " + symbols);
+        }
+
+        @Override
+        public void onMotion(long time, JoystickBatch batch) {
+            StringBuilder line = new StringBuilder().append(time).append(" motion");
+            for (int i = 0; i < batch.size(); i++) {
+                line.append(" ").append(batch.getTime(i)).append(":");
+                for (int axis = 0; axis < JoystickBatch.AXIS_COUNT; axis++) {
+                    line.append(axis == 0 ? "" : ",").append(batch.get(i, axis));
+                }
+            }
+            lines.add(line.toString());
+        }
+
+        @Override
+        public void onKeyDown(long time, int keyCode) {
+            lines.add(time + " down " + keyCode);
+        }
+
+        @Override
+        public void onKeyUp(long time, int keyCode) {
+            lines.add(time + " up " + keyCode);
+        }
+    }
+
+    private static List<String> read(byte[] recording) throws IOException {
+        InputRecording.Reader reader = new InputRecording.Reader(new ByteArrayInputStream(recording));
+        Transcript transcript = new Transcript();
+        while (reader.next(transcript)) {
+            // Visits every record
+        }
+        return transcript.lines;
+    }
+
+    @Test
+    public void roundTripKeepsEveryRecord() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputRecording.Writer writer = new InputRecording.Writer(out, Arrays.asList("english", "symbols"));
+        JoystickBatch batch = new JoystickBatch(2);
+        writer.startInput(1000, true);
+        batch.reset(2);
+        batch.add(1004, 0.5f, -1f, 0, 0, 0.25f, 0);
+        batch.add(1008, 1f, 0, -1f, 1f, 0, -0.75f);
+        writer.motion(1010, batch);
+        writer.keyDown(1020, GamepadKeys.KEYCODE_BUTTON_A);
+        writer.keyUp(1100, GamepadKeys.KEYCODE_BUTTON_A);
+        writer.close();
+
+        InputRecording.Reader reader = new InputRecording.Reader(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(Arrays.asList("english", "symbols"), reader.getKeyMapNames());
+        // Times start from the first record
+        assertEquals(Arrays.asList(
+                "0 start true",
+                "10 motion 4:0.5,-1.0,0.0,0.0,0.25,0.0 8:1.0,0.0,-1.0,1.0,0.0,-0.75",
+                "20 down " + GamepadKeys.KEYCODE_BUTTON_A,
+                "100 up " + GamepadKeys.KEYCODE_BUTTON_A), read(out.toByteArray()));
+    }
+
+    @Test
+    public void varintsKeepTheirLimits() throws IOException {
+        int[] keyCodes = {0, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1};
+        long[] times = {0, 127, 128 + 127, 1L << 35, Long.MAX_VALUE / 2};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputRecording.Writer writer = new InputRecording.Writer(out, Collections.singletonList("english"));
+        List<String> expected = new ArrayList<>();
+        for (long time : times) {
+            for (int keyCode : keyCodes) {
+                writer.keyDown(time, keyCode);
+                expected.add(time + " down " + keyCode);
+            }
+        }
+        writer.close();
+        assertEquals(expected, read(out.toByteArray()));
+    }
+
+    @Test
+    public void samplesNeverComeAfterTheirRecord() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputRecording.Writer writer = new InputRecording.Writer(out, Collections.singletonList("english"));
+        JoystickBatch batch = new JoystickBatch(1);
+        writer.keyDown(100, GamepadKeys.KEYCODE_BUTTON_A);
+        // A sample after its event is recorded at the event's time
+        batch.reset(1);
+        batch.add(200, 0, 0, 0, 0, 0, 0);
+        writer.motion(150, batch);
+        writer.close();
+        assertEquals(Arrays.asList(
+                "0 down " + GamepadKeys.KEYCODE_BUTTON_A,
+                "50 motion 50:0.0,0.0,0.0,0.0,0.0,0.0"), read(out.toByteArray()));
+    }
+
+    @Test
+    public void largeBatchesAreSplit() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputRecording.Writer writer = new InputRecording.Writer(out, Collections.singletonList("english"));
+        JoystickBatch batch = new JoystickBatch(300);
+        batch.reset(300);
+        for (int i = 0; i < 300; i++) {
+            batch.add(i, i / 300f, 0, 0, 0, 0, 0);
+        }
+        writer.motion(299, batch);
+        writer.close();
+
+        final List<Integer> sizes = new ArrayList<>();
+        final List<Float> xs = new ArrayList<>();
+        InputRecording.Reader reader = new InputRecording.Reader(new ByteArrayInputStream(out.toByteArray()));
+        while (reader.next(new Transcript() {
+            @Override
+            public void onMotion(long time, JoystickBatch batch) {
+                sizes.add(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    xs.add(batch.get(i, JoystickBatch.AXIS_X));
+                }
+            }
+        })) {
+            // Visits every record
+        }
+        assertEquals(Arrays.asList(255, 45), sizes);
+        for (int i = 0; i < 300; i++) {
+            assertEquals(i / 300f, xs.get(i), 0);
+        }
+    }
+
+    @Test
+    public void anEmptyRecordingHasNoRecords() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new InputRecording.Writer(out, Collections.<String>emptyList()).close();
+        InputRecording.Reader reader = new InputRecording.Reader(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(reader.getKeyMapNames().isEmpty());
+        assertFalse(reader.next(new Transcript()));
+    }
+
+    private static DataOutputStream header(ByteArrayOutputStream out, int magic, int version) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(magic);
+        data.writeInt(version);
+        data.writeByte(0);
+        return data;
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header(out, 0x12345678, InputRecording.VERSION);
+        assertUnreadable(out.toByteArray(), "Not an input recording");
+
+        out.reset();
+        header(out, InputRecording.MAGIC, InputRecording.VERSION + 1);
+        assertUnreadable(out.toByteArray(), "Unsupported recording version");
+    }
+
+    @Test
+    public void rejectsBrokenRecords() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header(out, InputRecording.MAGIC, InputRecording.VERSION).write(new byte[]{9, 0});
+        assertUnreadable(out.toByteArray(), "Unknown record type 9");
+
+        // A varint that never ends within 64 bits
+        out.reset();
+        DataOutputStream data = header(out, InputRecording.MAGIC, InputRecording.VERSION);
+        data.write(InputRecording.TYPE_KEY_DOWN);
+        for (int i = 0; i < 10; i++) {
+            data.write(0xFF);
+        }
+        assertUnreadable(out.toByteArray(), "Corrupt recording");
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsTruncatedRecordings() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputRecording.Writer writer = new InputRecording.Writer(out, Collections.singletonList("english"));
+        writer.keyDown(0, 1 << 20);
+        writer.close();
+        byte[] recording = out.toByteArray();
+        read(Arrays.copyOf(recording, recording.length - 1));
+    }
+
+    private static void assertUnreadable(byte[] recording, String message) {
+        try {
+            read(recording);
+            fail("Read a broken recording");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KeyMapFormatTest {
+
+    // A grinning face, a supplementary character taking a surrogate pair
+    private static final String EMOJI = "\uD83D\uDE00";
+
+    private static String[] outputs() {
+        String[] outputs = new String[KeyMap.OUTPUTS];
+        for (int i = 0; i < KeyMap.OUTPUTS; i++) {
+            outputs[i] = String.valueOf((char) ('!' + i));
+        }
+        return outputs;
+    }
+
+    private static byte[] write(KeyMap keyMap) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KeyMapFormat.write(keyMap, out);
+        return out.toByteArray();
+    }
+
+    private static void assertSameOutputs(KeyMap expected, KeyMap actual) {
+        for (int i = 0; i < KeyMap.OUTPUTS; i++) {
+            assertEquals("Output " + i, expected.getOutput(i), actual.getOutput(i));
+        }
+    }
+
+    @Test
+    public void roundTripKeepsEveryOutput() throws IOException {
+        String[] outputs = outputs();
+        outputs[KeyMap.outputIndex(0, 0, false)] = EMOJI;
+        outputs[KeyMap.outputIndex(0, 0, true)] = EMOJI + EMOJI;
+        outputs[KeyMap.outputIndex(2, 1, false)] = ".com";
+        outputs[KeyMap.outputIndex(8, 3, true)] = "\u05E9\u05C1";
+        char[] longest = new char[KeyMap.MAX_OUTPUT_LENGTH];
+        Arrays.fill(longest, 'x');
+        outputs[KeyMap.outputIndex(4, 2, false)] = new String(longest);
+        KeyMap keyMap = new KeyMap("test", outputs);
+
+        KeyMap read = KeyMapFormat.read("test", write(keyMap));
+        assertEquals("test", read.getName());
+        assertSameOutputs(keyMap, read);
+        assertEquals(EMOJI, read.getKey(0, 0));
+        assertEquals(EMOJI + EMOJI, read.getKey(0, 0, true));
+    }
+
+    @Test
+    public void readsFromAnOffsetInTheBuffer() throws IOException {
+        KeyMap keyMap = new KeyMap("test", outputs());
+        byte[] bytes = write(keyMap);
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 3);
+        buffer.position(3);
+        buffer.put(bytes);
+        buffer.position(3);
+        assertSameOutputs(keyMap, KeyMapFormat.read("test", buffer));
+    }
+
+    @Test
+    public void equalOutputsShareTheirText() throws IOException {
+        String[] outputs = outputs();
+        Arrays.fill(outputs, 0, 10, "same");
+        byte[] bytes = write(new KeyMap("test", outputs));
+        byte[] distinct = write(new KeyMap("test", outputs()));
+        // One copy of "same" replaces ten single chars
+        assertEquals(distinct.length + ("same".length() - 10) * 2, bytes.length);
+
+        KeyMap read = KeyMapFormat.read("test", bytes);
+        assertSame(read.getOutput(0), read.getOutput(9));
+    }
+
+    @Test
+    public void roundTripOfTheAppKeymaps() throws IOException {
+        File dir = new File(System.getProperty("keymap.dir", "../app/src/main/keymaps"));
+        for (String name : new String[]{"english", "hebrew", "symbols"}) {
+            KeyMap keyMap = KeyMapXml.load(new File(dir, name + ".xml"));
+            KeyMap read = KeyMapFormat.read(name, write(keyMap));
+            assertSameOutputs(keyMap, read);
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() {
+        assertUnreadable(new byte[]{'G', 'K', 'M', 'X', 0, 0, 0, 2, 0, 0});
+        assertUnreadable(new byte[3]);
+    }
+
+    @Test
+    public void rejectsOtherVersions() throws IOException {
+        byte[] bytes = write(new KeyMap("test", outputs()));
+        bytes[7]++;
+        assertUnreadable(bytes);
+    }
+
+    @Test
+    public void rejectsTruncatedKeymaps() throws IOException {
+        byte[] bytes = write(new KeyMap("test", outputs()));
+        assertUnreadable(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    @Test
+    public void rejectsOutputsOutsideThePool() throws IOException {
+        byte[] bytes = write(new KeyMap("test", outputs()));
+        // The last key's offset
+        bytes[bytes.length - 4] = (byte) 0xFF;
+        assertUnreadable(bytes);
+    }
+
+    private static void assertUnreadable(byte[] bytes) {
+        try {
+            KeyMapFormat.read("test", bytes);
+            fail("Read a broken keymap");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("keymap"));
+        }
+    }
+}
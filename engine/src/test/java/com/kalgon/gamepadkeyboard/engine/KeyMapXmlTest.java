@@ -0,0 +1,100 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KeyMapXmlTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * A keymap typing a letter from 'a' for every key, with the given first position instead
+     */
+    private File write(String name, String firstPosition) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<GamepadKeyboard>\n");
+        xml.append(firstPosition);
+        for (int position = 1; position < KeyMap.STICK_POSITIONS; position++) {
+            xml.append("<StickDirection position=\"").append(position).append("\">");
+            for (int b = 0; b < KeyMap.BUTTONS; b++) {
+                String tag = "ABXY".substring(b, b + 1);
+                char letter = (char) ('a' + (position * KeyMap.BUTTONS + b) % 26);
+                xml.append('<').append(tag).append('>').append(letter).append("</").append(tag).append('>');
+            }
+            xml.append("</StickDirection>\n");
+        }
+        xml.append("</GamepadKeyboard>\n");
+        File file = mFolder.newFile(name + ".xml");
+        Files.write(file.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void readsEveryKindOfOutput() throws IOException {
+        KeyMap keyMap = KeyMapXml.load(write("test", "<StickDirection position=\"0\">"
+                + "<A>e</A><B alt=\"&amp;&amp;\">&#x1F600;</B><X>.com</X><Y alt=\"&#x1F600;&#x1F600;\">o</Y>"
+                + "</StickDirection>\n"));
+        assertEquals("test", keyMap.getName());
+        assertEquals("e", keyMap.getKey(0, 0));
+        // Without an alt, shift is the upper case
+        assertEquals("E", keyMap.getKey(0, 0, true));
+        assertEquals("\uD83D\uDE00", keyMap.getKey(0, 1));
+        assertEquals("&&", keyMap.getKey(0, 1, true));
+        assertEquals(".com", keyMap.getKey(0, 2));
+        assertEquals(".COM", keyMap.getKey(0, 2, true));
+        assertEquals("\uD83D\uDE00\uD83D\uDE00", keyMap.getKey(0, 3, true));
+        assertEquals("e", keyMap.getKey(1, 0));
+    }
+
+    @Test
+    public void rejectsAMissingPosition() throws IOException {
+        assertInvalid(write("test", ""), "Stick position 0 is missing");
+    }
+
+    @Test
+    public void rejectsAMissingButton() throws IOException {
+        assertInvalid(write("test", "<StickDirection position=\"0\"><A>e</A><B>t</B><X>a</X></StickDirection>"),
+                "Button Y is missing in position 0");
+    }
+
+    @Test
+    public void rejectsADuplicateButton() throws IOException {
+        assertInvalid(write("test", "<StickDirection position=\"0\"><A>e</A><A>t</A></StickDirection>"),
+                "Button A is defined twice in position 0");
+    }
+
+    @Test
+    public void rejectsAnInvalidPosition() throws IOException {
+        assertInvalid(write("test", "<StickDirection position=\"9\"></StickDirection>"),
+                "Invalid stick position: \"9\"");
+    }
+
+    @Test
+    public void rejectsOutputsOverTheLimit() throws IOException {
+        StringBuilder longest = new StringBuilder();
+        for (int i = 0; i <= KeyMap.MAX_OUTPUT_LENGTH; i++) {
+            longest.append('x');
+        }
+        assertInvalid(write("test", "<StickDirection position=\"0\"><A>" + longest
+                + "</A><B>t</B><X>a</X><Y>o</Y></StickDirection>"), "Expected 1 to 64 characters in A of position 0");
+    }
+
+    private static void assertInvalid(File file, String message) {
+        try {
+            KeyMapXml.load(file);
+            fail("Loaded an invalid keymap");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+}
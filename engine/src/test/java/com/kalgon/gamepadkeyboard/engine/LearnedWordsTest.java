@@ -0,0 +1,83 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LearnedWordsTest {
+
+    private static List<String> withPrefix(LearnedWords words, String prefix) {
+        final List<String> found = new ArrayList<>();
+        words.forEachWithPrefix(prefix, new LearnedWords.WordVisitor() {
+            @Override
+            public void visit(String word, int count) {
+                found.add(word + "=" + count);
+            }
+        });
+        return found;
+    }
+
+    @Test
+    public void countsEveryUseInLowerCase() {
+        LearnedWords words = new LearnedWords();
+        words.learn("Zebra");
+        words.learn("zebra");
+        assertEquals(2, words.getCount("zebra"));
+        assertEquals(0, words.getCount("Zebra"));
+    }
+
+    @Test
+    public void visitsTheWordsWithAPrefix() {
+        LearnedWords words = new LearnedWords();
+        words.learn("zebra");
+        words.learn("zero");
+        words.learn("zebu");
+        words.learn("ze");
+        assertEquals("[zebra=1, zebu=1]", withPrefix(words, "zeb").toString());
+        assertEquals("[zebra=1, zero=1, zebu=1, ze=1]", withPrefix(words, "ze").toString());
+        assertEquals(4, withPrefix(words, "").size());
+        assertTrue(withPrefix(words, "zebras").isEmpty());
+    }
+
+    @Test
+    public void forgetsTheLeastRecentlyUsed() {
+        LearnedWords words = new LearnedWords(2);
+        words.learn("one");
+        words.learn("two");
+        words.learn("one");
+        words.learn("three");
+        assertEquals(2, words.getCount("one"));
+        assertEquals(0, words.getCount("two"));
+        assertEquals(1, words.getCount("three"));
+    }
+
+    @Test
+    public void roundTripKeepsCountsAndOrder() throws IOException {
+        LearnedWords words = new LearnedWords(2);
+        words.learn("one");
+        words.learn("two");
+        words.learn("one");
+        assertTrue(words.hasChanged());
+        StringWriter out = new StringWriter();
+        words.write(out);
+        assertFalse(words.hasChanged());
+        assertEquals("two\t1\none\t2\n", out.toString());
+
+        LearnedWords read = new LearnedWords(2);
+        read.read(new StringReader(out + "broken\tline\nno tab\n"));
+        assertFalse(read.hasChanged());
+        assertEquals(2, read.getCount("one"));
+        // "two" is still the least recently used
+        read.learn("three");
+        assertEquals(0, read.getCount("two"));
+        assertEquals(2, read.getCount("one"));
+    }
+}
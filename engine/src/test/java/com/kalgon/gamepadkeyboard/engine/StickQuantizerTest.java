@@ -0,0 +1,105 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StickQuantizerTest {
+
+    /**
+     * Quantizes a point at an angle clockwise from up, the Y axis pointing down like the stick's
+     */
+    private static int quantize(StickQuantizer quantizer, double degrees, double radius) {
+        double angle = Math.toRadians(degrees);
+        return quantizer.quantize((float) (radius * Math.sin(angle)), (float) (-radius * Math.cos(angle)));
+    }
+
+    @Test
+    public void eightSectorsClockwiseFromUp() {
+        for (int position = 1; position <= 8; position++) {
+            StickQuantizer quantizer = StickQuantizer.eightWay();
+            assertEquals(position, quantize(quantizer, (position - 1) * 45, 1));
+            assertEquals(position, quantizer.getPosition());
+        }
+    }
+
+    @Test
+    public void fourSectorsOnlyUseTheMainDirections() {
+        int[] expected = {1, 1, 3, 3, 5, 5, 7, 7};
+        double[] degrees = {-30, 30, 60, 120, 150, 210, 240, 300};
+        for (int i = 0; i < degrees.length; i++) {
+            StickQuantizer quantizer = StickQuantizer.fourWay();
+            assertEquals("At " + degrees[i] + " degrees", expected[i], quantize(quantizer, degrees[i], 1));
+        }
+    }
+
+    @Test
+    public void deadzoneIsTheCenter() {
+        StickQuantizer quantizer = StickQuantizer.eightWay();
+        assertEquals(0, quantizer.quantize(0, 0));
+        assertEquals(0, quantize(quantizer, 90, 0.19));
+        assertEquals(0, quantize(quantizer, 200, 0.19));
+    }
+
+    @Test
+    public void leavingTheCenterTakesTheMargin() {
+        StickQuantizer quantizer = StickQuantizer.eightWay();
+        // Past the deadzone but within its margin
+        assertEquals(0, quantize(quantizer, 90, 0.22));
+        assertEquals(3, quantize(quantizer, 90, 0.3));
+        // Back within the margin keeps the sector, only the deadzone centers
+        assertEquals(3, quantize(quantizer, 90, 0.22));
+        assertEquals(0, quantize(quantizer, 90, 0.15));
+    }
+
+    @Test
+    public void sectorBordersHaveHysteresis() {
+        StickQuantizer quantizer = StickQuantizer.eightWay();
+        assertEquals(1, quantize(quantizer, 0, 1));
+        // Past the border at 22.5 degrees, but not past the hysteresis
+        assertEquals(1, quantize(quantizer, 25, 1));
+        assertEquals(2, quantize(quantizer, 30, 1));
+        // And the same on the way back
+        assertEquals(2, quantize(quantizer, 20, 1));
+        assertEquals(1, quantize(quantizer, 15, 1));
+    }
+
+    @Test
+    public void hysteresisOnlyHoldsTheCurrentSector() {
+        StickQuantizer quantizer = StickQuantizer.eightWay();
+        assertEquals(1, quantize(quantizer, 0, 1));
+        // A jump straight across goes where the stick is
+        assertEquals(5, quantize(quantizer, 180, 1));
+        // Coming out of the center, there's nothing to hold on to
+        assertEquals(0, quantizer.quantize(0, 0));
+        assertEquals(2, quantize(quantizer, 25, 1));
+    }
+
+    @Test
+    public void resetCenters() {
+        StickQuantizer quantizer = StickQuantizer.eightWay();
+        quantize(quantizer, 90, 1);
+        quantizer.reset();
+        assertEquals(0, quantizer.getPosition());
+        // Without the sector to hold on to, the margin applies again
+        assertEquals(0, quantize(quantizer, 90, 0.22));
+    }
+
+    @Test
+    public void outOfRangeValuesStillQuantize() {
+        StickQuantizer quantizer = StickQuantizer.eightWay();
+        assertEquals(2, quantizer.quantize(1.5f, -1.5f));
+        assertEquals(4, quantizer.quantize(1.5f, 1.5f));
+        assertEquals(8, quantizer.quantize(-1.5f, -1.5f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherSectorCounts() {
+        new StickQuantizer(6, StickQuantizer.DEFAULT_DEADZONE, StickQuantizer.DEFAULT_DEADZONE_MARGIN, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsHysteresisOfHalfASector() {
+        new StickQuantizer(8, StickQuantizer.DEFAULT_DEADZONE, StickQuantizer.DEFAULT_DEADZONE_MARGIN, 22.5f);
+    }
+}
@@ -0,0 +1,172 @@
+package com.kalgon.gamepadkeyboard.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class WordCompleterTest {
+
+    private Dictionary mDictionary;
+    private LearnedWords mLearnedWords;
+    private WordCompleter mCompleter;
+
+    static Dictionary dictionary(String... wordsAndFrequencies) throws IOException {
+        DictionaryFormat.Entry[] entries = new DictionaryFormat.Entry[wordsAndFrequencies.length / 2];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new DictionaryFormat.Entry(wordsAndFrequencies[i * 2],
+                    Double.parseDouble(wordsAndFrequencies[i * 2 + 1]));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DictionaryFormat.write(Arrays.asList(entries), out);
+        return Dictionary.open(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mDictionary = dictionary(
+                "the", "100", "they", "50", "them", "40", "then", "30", "there", "20", "theory", "1",
+                "a", "10", "an", "8", "apple", "5");
+        mLearnedWords = new LearnedWords();
+        mCompleter = new WordCompleter(4);
+        mCompleter.setLanguage(mDictionary, mLearnedWords);
+    }
+
+    private String[] complete(int size) {
+        String[] out = new String[size];
+        int count = mCompleter.complete(out);
+        return Arrays.copyOf(out, count);
+    }
+
+    @Test
+    public void dictionaryFindsItsWords() {
+        assertEquals(9, mDictionary.getWordCount());
+        int node = mDictionary.findPrefix("then");
+        assertNotEquals(Dictionary.NO_NODE, node);
+        assertNotEquals(0, mDictionary.getFrequency(node));
+        assertEquals(0, mDictionary.getFrequency(mDictionary.findPrefix("th")));
+        assertEquals(Dictionary.NO_NODE, mDictionary.findPrefix("thy"));
+        assertEquals(mDictionary.getRoot(), mDictionary.findPrefix(""));
+    }
+
+    @Test
+    public void completionsAreRankedByFrequency() {
+        mCompleter.append("th");
+        assertArrayEquals(new String[]{"the", "they", "them", "then"}, complete(4));
+        assertArrayEquals(new String[]{"the", "they"}, complete(2));
+    }
+
+    @Test
+    public void theWordItselfIsACompletion() {
+        mCompleter.append("an");
+        assertArrayEquals(new String[]{"an"}, complete(4));
+    }
+
+    @Test
+    public void completionsKeepTheTypedCase() {
+        mCompleter.append("THe");
+        assertArrayEquals(new String[]{"THe", "THey", "THem", "THen"}, complete(4));
+    }
+
+    @Test
+    public void nothingForAnEmptyWord() {
+        assertEquals(0, complete(4).length);
+        mCompleter.append("the ");
+        assertEquals(0, complete(4).length);
+    }
+
+    @Test
+    public void nothingForAnUnknownPrefix() {
+        mCompleter.append("theories");
+        assertEquals(0, complete(4).length);
+        mCompleter.reset();
+        mCompleter.append("x");
+        assertEquals(0, complete(4).length);
+    }
+
+    @Test
+    public void nothingWithoutRoom() {
+        mCompleter.append("th");
+        assertEquals(0, mCompleter.complete(new String[0]));
+    }
+
+    @Test
+    public void atMostMaxResults() {
+        mCompleter.append("th");
+        assertEquals(4, complete(10).length);
+    }
+
+    @Test
+    public void deletingGoesBackUpTheTrie() {
+        mCompleter.append("thx");
+        assertEquals(0, complete(4).length);
+        mCompleter.deleteBackward();
+        mCompleter.deleteBackward();
+        assertEquals("t", mCompleter.getWord().toString());
+        assertArrayEquals(new String[]{"the", "they", "them", "then"}, complete(4));
+        mCompleter.deleteBackward();
+        mCompleter.deleteBackward();
+        assertEquals(0, complete(4).length);
+    }
+
+    @Test
+    public void wordsLongerThanTheLimitAreNotCompleted() {
+        char[] word = new char[WordCompleter.MAX_WORD_LENGTH + 1];
+        Arrays.fill(word, 't');
+        mCompleter.append(new String(word));
+        assertEquals(0, complete(4).length);
+    }
+
+    @Test
+    public void withoutADictionaryOnlyLearnedWords() {
+        mCompleter.setLanguage(null, mLearnedWords);
+        mCompleter.append("zebra ");
+        mCompleter.append("ze");
+        assertArrayEquals(new String[]{"zebra"}, complete(4));
+    }
+
+    @Test
+    public void finishedWordsAreLearned() {
+        mCompleter.append("Zebra, a ");
+        assertEquals(1, mLearnedWords.getCount("zebra"));
+        // Too short to be worth learning
+        assertEquals(0, mLearnedWords.getCount("a"));
+    }
+
+    @Test
+    public void learnedWordsRankWithTheCommonWords() {
+        // A learned word starts just below the common words, and climbs with use
+        mCompleter = new WordCompleter(6);
+        mCompleter.setLanguage(mDictionary, mLearnedWords);
+        mCompleter.append("thermos ");
+        mCompleter.append("th");
+        assertArrayEquals(new String[]{"the", "they", "them", "then", "there", "thermos"}, complete(6));
+
+        mCompleter.reset();
+        for (int i = 0; i < 4; i++) {
+            mCompleter.append("thermos ");
+        }
+        mCompleter.append("th");
+        assertArrayEquals(new String[]{"the", "thermos", "they", "them", "then", "there"}, complete(6));
+    }
+
+    @Test
+    public void aLearnedDictionaryWordIsOnlyOfferedOnce() {
+        mCompleter = new WordCompleter(6);
+        mCompleter.setLanguage(mDictionary, mLearnedWords);
+        mCompleter.append("theory theory ");
+        mCompleter.append("th");
+        List<String> completions = Arrays.asList(complete(6));
+        assertEquals(completions.indexOf("theory"), completions.lastIndexOf("theory"));
+        // Learning raised it above the rarest words
+        assertEquals(4, completions.indexOf("theory"));
+    }
+}
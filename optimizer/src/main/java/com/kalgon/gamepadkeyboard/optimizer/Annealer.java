@@ -0,0 +1,86 @@
+package com.kalgon.gamepadkeyboard.optimizer;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * One simulated annealing run: starting from a layout, keeps swapping two keys, always
+ * taking the swaps that lower the cost and sometimes the ones that raise it, less and
+ * less often as the temperature cools. Runs are independent, so many of them are forked
+ * at once to use every core.
+ */
+final class Annealer extends RecursiveTask<Annealer.Layout> {
+
+    private static final long serialVersionUID = 1L;
+
+    static final class Layout {
+        final int[] slots;
+        final double cost;
+
+        Layout(int[] slots, double cost) {
+            this.slots = slots;
+            this.cost = cost;
+        }
+    }
+
+    // The temperature cools from START to END times the typical cost of a swap
+    private static final double START_TEMPERATURE = 1.0;
+    private static final double END_TEMPERATURE = 0.001;
+    private static final int CALIBRATION_SWAPS = 1000;
+
+    private final LayoutModel mModel;
+    private final int[] mStart;
+    private final long mIterations;
+    private final long mSeed;
+
+    Annealer(LayoutModel model, int[] start, long iterations, long seed) {
+        mModel = model;
+        mStart = start;
+        mIterations = iterations;
+        mSeed = seed;
+    }
+
+    @Override
+    protected Layout compute() {
+        SplittableRandom random = new SplittableRandom(mSeed);
+        int[] slots = mStart.clone();
+        double cost = mModel.cost(slots);
+
+        int[] best = slots.clone();
+        double bestCost = cost;
+
+        double typicalDelta = typicalSwapDelta(slots, random);
+        double temperature = START_TEMPERATURE * typicalDelta;
+        double cooling = Math.pow(END_TEMPERATURE / START_TEMPERATURE, 1.0 / mIterations);
+
+        for (long i = 0; i < mIterations; i++) {
+            int u = random.nextInt(LayoutModel.SLOTS);
+            int w = random.nextInt(LayoutModel.SLOTS - 1);
+            if (w >= u) w++;
+
+            double delta = mModel.swapDelta(slots, u, w);
+            if (delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature)) {
+                LayoutModel.swap(slots, u, w);
+                cost += delta;
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    System.arraycopy(slots, 0, best, 0, slots.length);
+                }
+            }
+            temperature *= cooling;
+        }
+        // The running cost drifts with rounding, so recompute the best one
+        return new Layout(best, mModel.cost(best));
+    }
+
+    private double typicalSwapDelta(int[] slots, SplittableRandom random) {
+        double sum = 0;
+        for (int i = 0; i < CALIBRATION_SWAPS; i++) {
+            int u = random.nextInt(LayoutModel.SLOTS);
+            int w = random.nextInt(LayoutModel.SLOTS - 1);
+            if (w >= u) w++;
+            sum += Math.abs(mModel.swapDelta(slots, u, w));
+        }
+        return Math.max(sum / CALIBRATION_SWAPS, 1e-9);
+    }
+}
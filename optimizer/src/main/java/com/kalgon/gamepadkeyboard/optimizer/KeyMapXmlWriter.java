@@ -0,0 +1,80 @@
+package com.kalgon.gamepadkeyboard.optimizer;
+
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+import com.kalgon.gamepadkeyboard.engine.KeyMapXml;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a layout in the GamepadKeyboard XML format of app/src/main/keymaps
+ */
+final class KeyMapXmlWriter {
+
+    private static final String[] BUTTON_TAGS = {"A", "B", "X", "Y"};
+    private static final String[] POSITION_NAMES = {
+            "Middle", "Up", "Up right", "Right", "Down right", "Down", "Down left", "Left", "Up left",
+    };
+
+    private KeyMapXmlWriter() {
+    }
+
+    /**
+     * @param slots   The slot of each of the model's keys
+     * @param comment Written at the top, such as how the layout was made
+     */
+    static void write(LayoutModel model, int[] slots, String comment, Writer out) throws IOException {
+        // Which key is on each slot
+        int[] keys = new int[LayoutModel.SLOTS];
+        for (int k = 0; k < LayoutModel.SLOTS; k++) {
+            keys[slots[k]] = k;
+        }
+
+        out.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        out.write("<" + KeyMapXml.GAMEPAD_KEYBOARD + ">\n");
+        for (String line : comment.split("\n")) {
+            out.write("    <!-- " + line.replace("--", "- -") + " -->\n");
+        }
+        for (int position = 0; position < KeyMap.STICK_POSITIONS; position++) {
+            out.write("\n    <!-- " + POSITION_NAMES[position] + " -->\n");
+            out.write("    <" + KeyMapXml.STICK_DIRECTION + " position=\"" + position + "\">\n");
+            for (int button = 0; button < KeyMap.BUTTONS; button++) {
+                int key = keys[position * KeyMap.BUTTONS + button];
+                String main = model.mainOutputs[key];
+                String shifted = model.shiftedOutputs[key];
+
+                out.write("        <" + BUTTON_TAGS[button]);
+                if (!shifted.equals(KeyMap.defaultShiftedOutput(main))) {
+                    out.write(" alt=\"" + escape(shifted) + "\"");
+                }
+                out.write(">" + escape(main) + "</" + BUTTON_TAGS[button] + ">\n");
+            }
+            out.write("    </" + KeyMapXml.STICK_DIRECTION + ">\n");
+        }
+        out.write("</" + KeyMapXml.GAMEPAD_KEYBOARD + ">\n");
+    }
+
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
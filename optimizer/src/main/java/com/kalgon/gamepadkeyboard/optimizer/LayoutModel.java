@@ -0,0 +1,203 @@
+package com.kalgon.gamepadkeyboard.optimizer;
+
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The effort model: what typing a corpus costs with a keymap's keys placed on given
+ * slots (position * BUTTONS + button).
+ * <p>
+ * Every key costs a press, plus holding shift for its shifted output. Between two keys,
+ * the stick moves if their positions differ, and the thumb travels if their buttons
+ * differ. Space and enter are their own buttons and leave the stick where it is. Only
+ * the stick and thumb travel depend on the layout, so they are summed from the corpus'
+ * key pair counts, which makes a layout's cost independent of the corpus size.
+ */
+final class LayoutModel {
+
+    static final int SLOTS = KeyMap.STICK_POSITIONS * KeyMap.BUTTONS;
+
+    // Effort, in button presses
+    static final double PRESS = 1.0;
+    static final double SHIFT = 0.5;
+    static final double MOVE_FROM_CENTER = 1.0;
+    // Letting go of the stick, which springs back by itself
+    static final double RELEASE_TO_CENTER = 0.3;
+    // Each 45 degrees further than the next position over
+    static final double MOVE_STEP = 0.25;
+    // The diagonals are harder to hit than up, down, left and right
+    static final double DIAGONAL = 0.2;
+    static final double BUTTON_NEIGHBOR = 0.1;
+    static final double BUTTON_OPPOSITE = 0.2;
+
+    // The keymap's keys: key k starts on slot k
+    final String[] mainOutputs = new String[SLOTS];
+    final String[] shiftedOutputs = new String[SLOTS];
+
+    // Times key b follows key a in the corpus, at [a * SLOTS + b]
+    final double[] pairs = new double[SLOTS * SLOTS];
+    // The stick and thumb travel from slot s to slot t, at [s * SLOTS + t]
+    final double[] travel = new double[SLOTS * SLOTS];
+    // Whether going from slot s to slot t moves the stick
+    final boolean[] moves = new boolean[SLOTS * SLOTS];
+
+    // The effort no layout changes: presses, shift, space and enter
+    double fixedCost = 0;
+    long characters = 0;
+    long presses = 0;
+    // Characters the keymap can't type
+    long missing = 0;
+
+    private LayoutModel() {
+    }
+
+    static LayoutModel build(KeyMap keyMap, List<String> corpus) {
+        LayoutModel model = new LayoutModel();
+
+        // Single code point outputs, to the key (shifted keys are + SLOTS)
+        Map<Integer, Integer> keys = new HashMap<>();
+        for (int k = 0; k < SLOTS; k++) {
+            int position = k / KeyMap.BUTTONS;
+            int button = k % KeyMap.BUTTONS;
+            model.mainOutputs[k] = keyMap.getKey(position, button, false);
+            model.shiftedOutputs[k] = keyMap.getKey(position, button, true);
+        }
+        // Unshifted outputs win when the same text is on two keys
+        for (int k = SLOTS - 1; k >= 0; k--) {
+            putSingleCodePoint(keys, model.shiftedOutputs[k], k + SLOTS);
+        }
+        for (int k = SLOTS - 1; k >= 0; k--) {
+            putSingleCodePoint(keys, model.mainOutputs[k], k);
+        }
+
+        for (String text : corpus) {
+            int previous = -1;
+            for (int i = 0; i < text.length(); ) {
+                int codePoint = text.codePointAt(i);
+                i += Character.charCount(codePoint);
+                model.characters++;
+
+                Integer key = keys.get(codePoint);
+                if (key != null) {
+                    int k = key % SLOTS;
+                    model.fixedCost += PRESS + (key >= SLOTS ? SHIFT : 0);
+                    model.presses++;
+                    if (previous >= 0) {
+                        model.pairs[previous * SLOTS + k]++;
+                    }
+                    previous = k;
+                } else if (codePoint == ' ' || codePoint == '\n') {
+                    // R1 or R2
+                    model.fixedCost += PRESS;
+                    model.presses++;
+                } else if (!Character.isWhitespace(codePoint)) {
+                    model.missing++;
+                }
+            }
+        }
+
+        for (int s = 0; s < SLOTS; s++) {
+            for (int t = 0; t < SLOTS; t++) {
+                int from = s / KeyMap.BUTTONS;
+                int to = t / KeyMap.BUTTONS;
+                model.travel[s * SLOTS + t] = stickTravel(from, to)
+                        + buttonTravel(s % KeyMap.BUTTONS, t % KeyMap.BUTTONS);
+                model.moves[s * SLOTS + t] = from != to;
+            }
+        }
+        return model;
+    }
+
+    private static void putSingleCodePoint(Map<Integer, Integer> keys, String output, int key) {
+        if (output.codePointCount(0, output.length()) == 1) {
+            keys.put(output.codePointAt(0), key);
+        }
+    }
+
+    private static double stickTravel(int from, int to) {
+        if (from == to) return 0;
+        if (to == 0) return RELEASE_TO_CENTER;
+
+        double diagonal = to % 2 == 0 ? DIAGONAL : 0;
+        if (from == 0) return MOVE_FROM_CENTER + diagonal;
+
+        int distance = Math.abs(from - to);
+        int steps = Math.min(distance, 8 - distance);
+        return MOVE_FROM_CENTER + MOVE_STEP * (steps - 1) + diagonal;
+    }
+
+    /**
+     * Buttons are indexed A, B, X, Y, placed as a diamond: A bottom, B right, X left, Y top
+     */
+    private static double buttonTravel(int from, int to) {
+        if (from == to) return 0;
+        boolean opposite = (from == 0 && to == 3) || (from == 3 && to == 0)
+                || (from == 1 && to == 2) || (from == 2 && to == 1);
+        return opposite ? BUTTON_OPPOSITE : BUTTON_NEIGHBOR;
+    }
+
+    /**
+     * @param slots The slot of each key
+     */
+    double cost(int[] slots) {
+        double cost = fixedCost;
+        for (int a = 0; a < SLOTS; a++) {
+            for (int b = 0; b < SLOTS; b++) {
+                double count = pairs[a * SLOTS + b];
+                if (count != 0) cost += count * travel[slots[a] * SLOTS + slots[b]];
+            }
+        }
+        return cost;
+    }
+
+    long stickMoves(int[] slots) {
+        double count = 0;
+        for (int a = 0; a < SLOTS; a++) {
+            for (int b = 0; b < SLOTS; b++) {
+                if (moves[slots[a] * SLOTS + slots[b]]) count += pairs[a * SLOTS + b];
+            }
+        }
+        return (long) count;
+    }
+
+    /**
+     * The change in cost if keys u and w traded slots. Only the pairs involving them change.
+     */
+    double swapDelta(int[] slots, int u, int w) {
+        double before = pairCosts(slots, u, w);
+        swap(slots, u, w);
+        double after = pairCosts(slots, u, w);
+        swap(slots, u, w);
+        return after - before;
+    }
+
+    private double pairCosts(int[] slots, int u, int w) {
+        double cost = 0;
+        for (int k = 0; k < SLOTS; k++) {
+            cost += pairs[u * SLOTS + k] * travel[slots[u] * SLOTS + slots[k]];
+            cost += pairs[w * SLOTS + k] * travel[slots[w] * SLOTS + slots[k]];
+            if (k != u && k != w) {
+                cost += pairs[k * SLOTS + u] * travel[slots[k] * SLOTS + slots[u]];
+                cost += pairs[k * SLOTS + w] * travel[slots[k] * SLOTS + slots[w]];
+            }
+        }
+        return cost;
+    }
+
+    static void swap(int[] slots, int u, int w) {
+        int slot = slots[u];
+        slots[u] = slots[w];
+        slots[w] = slot;
+    }
+
+    static int[] identity() {
+        int[] slots = new int[SLOTS];
+        for (int k = 0; k < SLOTS; k++) {
+            slots[k] = k;
+        }
+        return slots;
+    }
+}
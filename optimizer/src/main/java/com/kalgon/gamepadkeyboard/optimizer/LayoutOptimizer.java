@@ -0,0 +1,184 @@
+package com.kalgon.gamepadkeyboard.optimizer;
+
+import com.kalgon.gamepadkeyboard.engine.KeyMap;
+import com.kalgon.gamepadkeyboard.engine.KeyMapXml;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Scores keymaps by the effort of typing a corpus with them ({@link LayoutModel}), and
+ * searches for better layouts with parallel simulated annealing.
+ * <pre>
+ * score    &lt;corpus&gt; &lt;keymap.xml&gt;...
+ * optimize &lt;corpus&gt; &lt;keymap.xml&gt; &lt;output.xml&gt; [--rounds N] [--iterations N] [--threads N] [--seed N]
+ * </pre>
+ * The corpus is a UTF-8 text file, or a directory of them. Optimizing only moves the
+ * keymap's keys around, each with its own shifted output, so the result types exactly
+ * the same characters.
+ */
+public final class LayoutOptimizer {
+
+    private static final int DEFAULT_ROUNDS = 8;
+    private static final long DEFAULT_ITERATIONS = 2000000;
+
+    private LayoutOptimizer() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals("score")) {
+            List<String> corpus = readCorpus(new File(args[1]));
+            for (int i = 2; i < args.length; i++) {
+                score(new File(args[i]), corpus);
+            }
+        } else if (args.length >= 4 && args[0].equals("optimize")) {
+            optimize(args);
+        } else {
+            usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: LayoutOptimizer score <corpus> <keymap.xml>...");
+        System.err.println("       LayoutOptimizer optimize <corpus> <keymap.xml> <output.xml>"
+                + " [--rounds N] [--iterations N] [--threads N] [--seed N]");
+        System.exit(2);
+    }
+
+    /**
+     * Parses an option's value, or exits with the usage if it's not a number from min to max
+     */
+    private static long number(String option, String value, long min, long max) {
+        try {
+            long number = Long.parseLong(value);
+            if (number >= min && number <= max) return number;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        String range = min == Long.MIN_VALUE ? "" : max >= Integer.MAX_VALUE ? " of at least " + min
+                : " from " + min + " to " + max;
+        System.err.println(option + " must be a number" + range + ", not " + value);
+        usage();
+        return min;
+    }
+
+    private static void score(File keyMapFile, List<String> corpus) throws IOException {
+        KeyMap keyMap = KeyMapXml.load(keyMapFile);
+        LayoutModel model = LayoutModel.build(keyMap, corpus);
+        System.out.println(keyMapFile.getName() + ": " + describe(model, LayoutModel.identity()));
+    }
+
+    private static String describe(LayoutModel model, int[] slots) {
+        long typed = Math.max(1, model.presses);
+        return String.format(Locale.ROOT,
+                "%.4f effort/key, %.4f stick moves/key, %d keys typed, %d of %d characters missing",
+                model.cost(slots) / typed, (double) model.stickMoves(slots) / typed,
+                model.presses, model.missing, model.characters);
+    }
+
+    private static void optimize(String[] args) throws Exception {
+        File keyMapFile = new File(args[2]);
+        File output = new File(args[3]);
+
+        int rounds = DEFAULT_ROUNDS;
+        long iterations = DEFAULT_ITERATIONS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        for (int i = 4; i < args.length; i += 2) {
+            // A truncated command would otherwise run with the defaults
+            if (i + 1 == args.length) {
+                System.err.println("No value for " + args[i]);
+                usage();
+            }
+            switch (args[i]) {
+                case "--rounds":
+                    rounds = (int) number(args[i], args[i + 1], 1, Integer.MAX_VALUE);
+                    break;
+                case "--iterations":
+                    iterations = number(args[i], args[i + 1], 1, Long.MAX_VALUE);
+                    break;
+                case "--threads":
+                    // ForkJoinPool's limit
+                    threads = (int) number(args[i], args[i + 1], 1, 0x7fff);
+                    break;
+                case "--seed":
+                    seed = number(args[i], args[i + 1], Long.MIN_VALUE, Long.MAX_VALUE);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    usage();
+            }
+        }
+
+        List<String> corpus = readCorpus(new File(args[1]));
+        KeyMap keyMap = KeyMapXml.load(keyMapFile);
+        LayoutModel model = LayoutModel.build(keyMap, corpus);
+        System.out.println("Start: " + describe(model, LayoutModel.identity()));
+
+        // Every round, each thread anneals from the best layout so far with its own seed
+        Annealer.Layout best = new Annealer.Layout(LayoutModel.identity(), model.cost(LayoutModel.identity()));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int round = 0; round < rounds; round++) {
+                List<Annealer> runs = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    runs.add(new Annealer(model, best.slots, iterations, seed + (long) round * threads + t));
+                }
+                final List<Annealer> tasks = runs;
+                pool.submit(() -> ForkJoinTask.invokeAll(tasks)).get();
+
+                for (Annealer run : runs) {
+                    Annealer.Layout layout = run.join();
+                    if (layout.cost < best.cost) best = layout;
+                }
+                System.out.println(String.format(Locale.ROOT, "Round %d: %.4f effort/key", round + 1,
+                        best.cost / Math.max(1, model.presses)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        System.out.println("Best:  " + describe(model, best.slots));
+        String comment = "Generated by LayoutOptimizer from " + keyMapFile.getName() + "\n"
+                + String.format(Locale.ROOT, "%.4f effort/key over %d keys of %s", best.cost / Math.max(1, model.presses),
+                model.presses, args[1]);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)) {
+            KeyMapXmlWriter.write(model, best.slots, comment, out);
+        }
+        // Make sure the keyboard can load it
+        KeyMapXml.load(output);
+        System.out.println("Wrote " + output);
+    }
+
+    private static List<String> readCorpus(File file) throws IOException {
+        List<String> texts = new ArrayList<>();
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File child : files) {
+                    if (child.isFile()) texts.add(read(child));
+                }
+            }
+        } else {
+            texts.add(read(file));
+        }
+        if (texts.isEmpty()) {
+            throw new IOException("No corpus found in " + file);
+        }
+        return texts;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}